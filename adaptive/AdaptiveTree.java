@@ -0,0 +1,329 @@
+package adaptive;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * Adaptive facade over the lock engines.
+ *
+ * No single engine wins everywhere: per-ancestor counters (cacheFriendlyLayout, BFS order) are
+ * cheapest while root paths are short, the Euler-tour Fenwick trees of summitted_code keep
+ * lock/unlock at O(log n) however deep the tree gets but scan the whole subtree on upgrade,
+ * and heavy-light decomposition keeps upgrades on deep trees to a pruned DFS at O(log^2 n)
+ * per step. The facade measures the tree once (mean/max depth, arity), counts the live
+ * operation mix with exponential decay, and every WINDOW operations asks WorkloadProfile
+ * which engine its cost model prefers.
+ *
+ * Switching rebuilds the new engine and replays the current locks into it. A shadow copy of
+ * the lock state (owner per node, locked nodes keyed by Euler entry time) is kept for that,
+ * so migration never has to read state back out of an engine. The locked set is always an
+ * antichain (no locked node has a locked ancestor), so every replayed lock succeeds in any
+ * order. A switch only happens when the estimate improves by HYSTERESIS and the expected
+ * saving over one window pays for replaying the locks.
+ *
+ * Not thread-safe, like the engines it wraps.
+ */
+public class AdaptiveTree {
+    public enum Kind { COUNTERS, EULER_TOUR, HEAVY_LIGHT }
+
+    static final int WINDOW = 1 << 12;     // operations between re-evaluations
+    static final double HYSTERESIS = 0.25; // required relative improvement before switching
+
+    private interface Op {
+        boolean apply(String name, int userId);
+    }
+
+    // The three operations of whichever engine is currently behind the facade
+    private static final class Backend {
+        final Op lock, unlock, upgrade;
+
+        Backend(Op lock, Op unlock, Op upgrade) {
+            this.lock = lock;
+            this.unlock = unlock;
+            this.upgrade = upgrade;
+        }
+    }
+
+    private final List<String> nodeNames;
+    private final int[] parent;
+    private final Map<String, Integer> index;
+    private final int[] depth, tin, tout; // tout = last entry time inside the subtree
+
+    // Shadow lock state, used only for migration
+    private final int[] owner;
+    private final TreeMap<Integer, Integer> lockedByTin = new TreeMap<>();
+
+    private final WorkloadProfile profile;
+    private Kind kind;
+    private Backend backend;
+    private int sinceCheck;
+    private int migrations;
+
+    // Complete m-ary tree in level order, as in the stdin format
+    public AdaptiveTree(List<String> nodeNames, int m) {
+        this(nodeNames, mAryParents(nodeNames.size(), m));
+    }
+
+    // parent[i] is the index of node i's parent, -1 for the root
+    public AdaptiveTree(List<String> nodeNames, int[] parent) {
+        int n = nodeNames.size();
+        this.nodeNames = nodeNames;
+        this.parent = parent;
+        this.index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) index.put(nodeNames.get(i), i);
+        this.depth = new int[n];
+        this.tin = new int[n];
+        this.tout = new int[n];
+        this.owner = new int[n];
+        Arrays.fill(owner, -1);
+
+        // Children in CSR form, then an iterative DFS for depth and entry/exit times
+        int root = -1;
+        int[] start = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (parent[i] < 0) root = i;
+            else start[parent[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) start[i + 1] += start[i];
+        int[] children = new int[Math.max(0, n - 1)];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < n; i++) if (parent[i] >= 0) children[fill[parent[i]]++] = i;
+
+        long depthSum = 0;
+        int maxDepth = 0, internal = 0, timer = 0;
+        if (root >= 0) {
+            int[] stack = new int[n], next = new int[n];
+            int top = 0;
+            stack[top++] = root;
+            next[root] = start[root];
+            tin[root] = timer++;
+            while (top > 0) {
+                int v = stack[top - 1];
+                if (next[v] < start[v + 1]) {
+                    int c = children[next[v]++];
+                    depth[c] = depth[v] + 1;
+                    tin[c] = timer++;
+                    next[c] = start[c];
+                    stack[top++] = c;
+                } else {
+                    tout[v] = timer - 1;
+                    top--;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            depthSum += depth[i];
+            maxDepth = Math.max(maxDepth, depth[i]);
+            if (start[i + 1] > start[i]) internal++;
+        }
+        double arity = internal == 0 ? 0 : (double) (n - 1) / internal;
+        this.profile = new WorkloadProfile(n, n == 0 ? 0 : (double) depthSum / n, maxDepth, arity);
+
+        this.kind = profile.best();
+        this.backend = create(kind);
+    }
+
+    private static int[] mAryParents(int n, int m) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = i == 0 ? -1 : (i - 1) / m;
+        return parent;
+    }
+
+    private Backend create(Kind kind) {
+        switch (kind) {
+            case COUNTERS: {
+                summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.TreeOfSpaceMySolution t =
+                    new summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.TreeOfSpaceMySolution(
+                        nodeNames, parent, summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.Layout.BFS);
+                return new Backend(t::lock, t::unlock, t::upgrade);
+            }
+            case EULER_TOUR: {
+                summitted_code.TestClass.TreeOfSpaceMySolution t = new summitted_code.TestClass.TreeOfSpaceMySolution(nodeNames, parent);
+                return new Backend(t::lock, t::unlock, t::upgrade);
+            }
+            default: {
+                summitted_code.optimizing_solutions.heavyLightDecomposition.TestClass.TreeOfSpaceMySolution t =
+                    new summitted_code.optimizing_solutions.heavyLightDecomposition.TestClass.TreeOfSpaceMySolution(nodeNames, parent);
+                return new Backend(t::lock, t::unlock, t::upgrade);
+            }
+        }
+    }
+
+    // ===================== OPERATIONS =====================
+
+    public boolean lock(String name, int userId) {
+        Integer v = index.get(name);
+        if (v == null) return false;
+        profile.lock();
+        boolean ok = backend.lock.apply(name, userId);
+        if (ok) {
+            owner[v] = userId;
+            lockedByTin.put(tin[v], v);
+        }
+        tick();
+        return ok;
+    }
+
+    public boolean unlock(String name, int userId) {
+        Integer v = index.get(name);
+        if (v == null) return false;
+        profile.unlock();
+        boolean ok = backend.unlock.apply(name, userId);
+        if (ok) {
+            owner[v] = -1;
+            lockedByTin.remove(tin[v]);
+        }
+        tick();
+        return ok;
+    }
+
+    public boolean upgrade(String name, int userId) {
+        Integer v = index.get(name);
+        if (v == null) return false;
+        boolean ok = backend.upgrade.apply(name, userId);
+        int cleared = 0;
+        long paths = 0;
+        if (ok) {
+            // Every lock strictly inside v's subtree belonged to userId and is now gone
+            NavigableMap<Integer, Integer> below = lockedByTin.subMap(tin[v], false, tout[v], true);
+            for (int c : below.values()) {
+                owner[c] = -1;
+                cleared++;
+                paths += depth[c] - depth[v];
+            }
+            below.clear();
+            owner[v] = userId;
+            lockedByTin.put(tin[v], v);
+        }
+        profile.upgrade(tout[v] - tin[v] + 1, cleared, paths);
+        tick();
+        return ok;
+    }
+
+    // ===================== ADAPTATION =====================
+
+    private void tick() {
+        if (++sinceCheck < WINDOW) return;
+        sinceCheck = 0;
+        Kind best = profile.best();
+        if (best != kind) {
+            double current = profile.cost(kind), candidate = profile.cost(best);
+            double saving = (current - candidate) * WINDOW;
+            double replay = (lockedByTin.size() + profile.size) * candidate; // rebuild plus one lock per held node
+            if (candidate < current * (1 - HYSTERESIS) && saving > replay) switchTo(best);
+        }
+        profile.decay();
+    }
+
+    // Rebuilds the given engine and replays the current locks into it. Public so a caller
+    // that knows its workload better than the profile can pin an engine.
+    public void switchTo(Kind target) {
+        if (target == kind) return;
+        Backend next = create(target);
+        for (int v : lockedByTin.values()) {
+            if (!next.lock.apply(nodeNames.get(v), owner[v])) {
+                throw new IllegalStateException("Migration to " + target + " rejected lock on " + nodeNames.get(v));
+            }
+        }
+        backend = next;
+        kind = target;
+        migrations++;
+    }
+
+    public Kind engine() {
+        return kind;
+    }
+
+    public int migrations() {
+        return migrations;
+    }
+
+    public String profile() {
+        return profile + ", engine " + kind + ", " + migrations + " migrations";
+    }
+
+    // ===================== DRIVER =====================
+
+    // Three regimes, each run on a facade left to adapt and on every engine pinned up front
+    private static void benchmark(int n, int ops) {
+        int[] mAry = mAryParents(n, 4);
+        int[] path = new int[n];
+        Random random = new Random(7);
+        for (int i = 0; i < n; i++) path[i] = i == 0 ? -1 : random.nextInt(256) == 0 ? random.nextInt(i) : i - 1;
+        List<String> names = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) names.add("N" + i);
+
+        String[] regimes = {"4-ary, lock/unlock", "path, lock/unlock", "path, 30% upgrade"};
+        int[][] shapes = {mAry, path, path};
+        int[] upgradePercent = {0, 0, 30};
+        for (int r = 0; r < regimes.length; r++) {
+            StringBuilder line = new StringBuilder(String.format("%-20s", regimes[r]));
+            String shape = null;
+            for (int round = 0; round < 2; round++) // the first round only warms up the JIT
+            for (int pin = -1; pin < Kind.values().length; pin++) {
+                AdaptiveTree tree = new AdaptiveTree(names, shapes[r]);
+                if (pin >= 0) tree.switchTo(Kind.values()[pin]);
+                Random rng = new Random(r);
+                long t0 = System.nanoTime();
+                for (int k = 0; k < ops; k++) {
+                    // Upgrades go to nodes a few levels above a random lock
+                    String name = names.get(rng.nextInt(n));
+                    int roll = rng.nextInt(100);
+                    if (roll < upgradePercent[r]) {
+                        int v = rng.nextInt(n);
+                        for (int up = 0; up < 4 && shapes[r][v] >= 0; up++) v = shapes[r][v];
+                        tree.upgrade(names.get(v), 1);
+                    } else if (roll % 2 == 0) {
+                        tree.lock(name, 1);
+                    } else {
+                        tree.unlock(name, 1);
+                    }
+                }
+                double ns = (System.nanoTime() - t0) / (double) ops;
+                if (round == 0) continue;
+                line.append(String.format("  %s %.0f ns", pin < 0 ? "adaptive(" + tree.engine() + ")" : Kind.values()[pin].toString(), ns));
+                if (pin < 0) shape = tree.profile();
+            }
+            System.out.println(line);
+            System.out.println("    " + shape);
+        }
+    }
+
+    public static void main(String args[] ) throws Exception {
+        if(args.length > 0 && args[0].equals("bench")){
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16;
+            benchmark(n, 1 << 19);
+            return;
+        }
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+        int n = Integer.parseInt(br.readLine());
+        int m = Integer.parseInt(br.readLine());
+        int q = Integer.parseInt(br.readLine());
+
+        List<String> nodeNames = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            nodeNames.add(br.readLine().trim());
+        }
+
+        AdaptiveTree tree = new AdaptiveTree(nodeNames, m);
+
+        for(int i = 0; i < q; i++){
+            String[] parts = br.readLine().trim().split("\\s+");
+            int type = Integer.parseInt(parts[0]);
+            String name = parts[1];
+            int userId = Integer.parseInt(parts[2]);
+
+            boolean result = switch(type){
+                case 1 -> tree.lock(name, userId);
+                case 2 -> tree.unlock(name, userId);
+                case 3 -> tree.upgrade(name, userId);
+                default -> false;
+            };
+
+            System.out.println(result);
+        }
+        System.err.println(tree.profile());
+    }
+}
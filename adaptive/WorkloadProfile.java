@@ -0,0 +1,88 @@
+package adaptive;
+
+// Tree shape plus a decaying count of the live operation mix, and a rough cost model (in
+// "node visits" per operation) for each backing engine. Only the ratios between engines
+// matter, so the constants are deliberately simple.
+class WorkloadProfile {
+    final int size;
+    final double meanDepth;
+    final int maxDepth;
+    final double arity; // mean children per internal node
+
+    // Decayed counts, halved at every re-evaluation so old traffic fades out
+    private double locks, unlocks, upgrades;
+    private double upgradeSubtree; // nodes under each upgrade target
+    private double upgradePaths;   // summed distance from a successful upgrade to the locks it absorbed
+    private double upgradeCleared; // locks absorbed by successful upgrades
+
+    WorkloadProfile(int size, double meanDepth, int maxDepth, double arity) {
+        this.size = size;
+        this.meanDepth = meanDepth;
+        this.maxDepth = maxDepth;
+        this.arity = arity;
+    }
+
+    void lock() {
+        locks++;
+    }
+
+    void unlock() {
+        unlocks++;
+    }
+
+    void upgrade(int subtree, int cleared, long pathLength) {
+        upgrades++;
+        upgradeSubtree += subtree;
+        upgradeCleared += cleared;
+        upgradePaths += pathLength;
+    }
+
+    void decay() {
+        locks /= 2;
+        unlocks /= 2;
+        upgrades /= 2;
+        upgradeSubtree /= 2;
+        upgradePaths /= 2;
+        upgradeCleared /= 2;
+    }
+
+    double upgradeShare() {
+        double total = locks + unlocks + upgrades;
+        return total == 0 ? 0 : upgrades / total;
+    }
+
+    // Expected visits per operation on the given engine under the current mix
+    double cost(AdaptiveTree.Kind kind) {
+        double total = locks + unlocks + upgrades;
+        // Before any traffic: mostly lock/unlock, one upgrade in ten absorbing one lock
+        double lu = total == 0 ? 0.9 : (locks + unlocks) / total;
+        double up = total == 0 ? 0.1 : upgrades / total;
+        double subtree = upgrades == 0 ? meanDepth + 1 : upgradeSubtree / upgrades;
+        double cleared = upgrades == 0 ? 1 : upgradeCleared / upgrades;
+        double paths = upgrades == 0 ? meanDepth / 2 : upgradePaths / upgrades;
+
+        double logN = Math.log(size + 1) / Math.log(2) + 1;
+        double pathOp = Math.min(logN, meanDepth + 1) * logN; // chain prefixes × Fenwick steps
+        double visited = Math.min(subtree, (1 + arity) * paths + 1); // pruned DFS of an upgrade
+
+        return switch (kind) {
+            case COUNTERS -> lu * meanDepth + up * (visited + (cleared + 1) * meanDepth);
+            case EULER_TOUR -> lu * logN + up * (subtree + (cleared + 1) * logN);
+            case HEAVY_LIGHT -> lu * pathOp + up * (visited * logN + (cleared + 1) * pathOp);
+        };
+    }
+
+    AdaptiveTree.Kind best() {
+        AdaptiveTree.Kind best = AdaptiveTree.Kind.COUNTERS;
+        for (AdaptiveTree.Kind kind : AdaptiveTree.Kind.values()) {
+            if (cost(kind) < cost(best)) best = kind;
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d depth mean %.1f max %d, arity %.2f, upgrades %.1f%%",
+            size, meanDepth, maxDepth, arity, 100 * upgradeShare());
+    }
+}
@@ -0,0 +1,331 @@
+package dynamic;
+
+// Approach: Link-cut tree over the live hierarchy
+// lock/unlock/upgrade with the usual rules, plus addChild/removeSubtree/moveSubtree while the
+// tree is in use. The binary-lifting table of summitted_code would need an O(n log n) rebuild
+// after every change; here every structural change and every counter update is a link-cut
+// path operation, O(log n) amortized.
+
+import java.util.*;
+
+class Node {
+    String name;
+    Node parent;
+    Set<Node> children;
+    int lockedBy;
+
+    // Link-cut tree fields: each preferred path is a splay tree keyed by depth
+    Node splayParent; // splay parent, or path-parent when this is the root of its splay tree
+    Node left, right;
+    int locked;   // 1 when locked, so path sums count locked ancestors
+    int lockSum;  // locked nodes in this splay subtree
+    int lockedDescendantCount; // locked nodes strictly below this node in the real tree
+    int pendingAdd; // lazy addition to lockedDescendantCount for the whole splay subtree
+
+    public Node(String name) {
+        this.name = name;
+        this.children = new LinkedHashSet<>();
+        this.lockedBy = -1;
+    }
+}
+
+public class TreeOfSpaceDynamic {
+    private Map<String, Node> nodeMap = new HashMap<>();
+    private Node root;
+
+    public TreeOfSpaceDynamic(List<String> nodeNames, Map<String, List<String>> adjList) {
+        for (String name : nodeNames) {
+            nodeMap.put(name, new Node(name));
+        }
+        for (String parentName : adjList.keySet()) {
+            Node parent = nodeMap.get(parentName);
+            for (String childName : adjList.get(parentName)) {
+                attach(nodeMap.get(childName), parent);
+            }
+        }
+        root = nodeMap.get(nodeNames.get(0));
+    }
+
+    // Same m-ary layout as TreeOfSpaceMySolution(nodeNames, m)
+    public TreeOfSpaceDynamic(List<String> nodeNames, int m) {
+        for (String name : nodeNames) {
+            nodeMap.put(name, new Node(name));
+        }
+        for (int i = 1; i < nodeNames.size(); i++) {
+            attach(nodeMap.get(nodeNames.get(i)), nodeMap.get(nodeNames.get((i - 1) / m)));
+        }
+        root = nodeMap.get(nodeNames.get(0));
+    }
+
+    // ===================== LOCK / UNLOCK / UPGRADE =====================
+
+    public boolean lock(String name, int uid) {
+        Node node = nodeMap.get(name);
+        if (node == null || node.lockedBy != -1) return false;
+        if (descendantLocks(node) > 0 || ancestorLocks(node) > 0) return false;
+
+        setLocked(node, uid);
+        return true;
+    }
+
+    public boolean unlock(String name, int uid) {
+        Node node = nodeMap.get(name);
+        if (node == null || node.lockedBy == -1 || node.lockedBy != uid) return false;
+
+        clearLocked(node);
+        return true;
+    }
+
+    public boolean upgrade(String name, int uid) {
+        Node node = nodeMap.get(name);
+        if (node == null || node.lockedBy != -1) return false;
+        if (descendantLocks(node) == 0 || ancestorLocks(node) > 0) return false;
+
+        List<Node> lockedNodes = new ArrayList<>();
+        if (!collectLockedDescendants(node, uid, lockedNodes)) return false;
+
+        for (Node n : lockedNodes) clearLocked(n);
+        setLocked(node, uid);
+        return true;
+    }
+
+    // ===================== TREE MUTATION =====================
+
+    // Adds a new leaf under parentName. O(log n) amortized.
+    public boolean addChild(String parentName, String childName) {
+        Node parent = nodeMap.get(parentName);
+        if (parent == null || nodeMap.containsKey(childName)) return false;
+
+        Node child = new Node(childName);
+        nodeMap.put(childName, child);
+        attach(child, parent);
+        return true;
+    }
+
+    // Detaches and forgets the subtree rooted at name. Rejected while anything in it is
+    // locked, so no lock silently disappears. O(log n) amortized plus the subtree size for
+    // dropping the names.
+    public boolean removeSubtree(String name) {
+        Node node = nodeMap.get(name);
+        if (node == null || node == root) return false;
+        if (node.lockedBy != -1 || descendantLocks(node) > 0) return false;
+
+        detach(node);
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            nodeMap.remove(n.name);
+            for (Node child : n.children) stack.push(child);
+        }
+        return true;
+    }
+
+    // Re-parents the subtree rooted at name under newParentName. Rejected if it would create a
+    // cycle, or if the subtree holds a lock and the new parent or one of its ancestors is
+    // locked (a locked node may never have a locked ancestor). O(log n) amortized.
+    public boolean moveSubtree(String name, String newParentName) {
+        Node node = nodeMap.get(name);
+        Node newParent = nodeMap.get(newParentName);
+        if (node == null || newParent == null || node == root) return false;
+        if (newParent == node.parent) return true;
+        if (isAncestor(node, newParent)) return false;
+
+        int carried = node.locked + descendantLocks(node);
+        if (carried > 0 && (newParent.locked + ancestorLocks(newParent)) > 0) return false;
+
+        addToAncestors(node, -carried); // old ancestors lose the subtree's locks
+        detach(node);
+        attach(node, newParent);
+        addToAncestors(node, carried);  // new ancestors gain them
+        return true;
+    }
+
+    // ===================== HELPERS =====================
+
+    private void setLocked(Node node, int uid) {
+        access(node); // node is now the root of its splay tree
+        node.lockedBy = uid;
+        node.locked = 1;
+        pull(node);
+        addToAncestors(node, 1);
+    }
+
+    private void clearLocked(Node node) {
+        access(node);
+        node.lockedBy = -1;
+        node.locked = 0;
+        pull(node);
+        addToAncestors(node, -1);
+    }
+
+    // Locked nodes strictly above node
+    private int ancestorLocks(Node node) {
+        access(node); // left splay subtree is exactly the root → parent path
+        return lockSum(node.left);
+    }
+
+    private int descendantLocks(Node node) {
+        access(node); // pushes every pending addition down to node
+        return node.lockedDescendantCount;
+    }
+
+    // Adds delta to lockedDescendantCount of every proper ancestor, lazily
+    private void addToAncestors(Node node, int delta) {
+        if (delta == 0) return;
+        access(node);
+        applyAdd(node.left, delta);
+    }
+
+    private boolean isAncestor(Node a, Node b) {
+        return lca(a, b) == a;
+    }
+
+    private Node lca(Node a, Node b) {
+        access(a);
+        return access(b);
+    }
+
+    private void attach(Node child, Node parent) {
+        child.parent = parent;
+        parent.children.add(child);
+        access(child); // child is the root of its own tree, so it has no left splay child
+        child.splayParent = parent;
+    }
+
+    private void detach(Node node) {
+        node.parent.children.remove(node);
+        node.parent = null;
+        access(node);
+        if (node.left != null) {
+            node.left.splayParent = null;
+            node.left = null;
+            pull(node);
+        }
+    }
+
+    // Pruned DFS: only enters children whose subtree holds a lock
+    private boolean collectLockedDescendants(Node node, int uid, List<Node> result) {
+        Deque<Node> stack = new ArrayDeque<>(node.children);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            if (n.lockedBy != -1) {
+                if (n.lockedBy != uid) return false;
+                result.add(n);
+                continue; // nothing below a locked node can be locked
+            }
+            if (descendantLocks(n) == 0) continue;
+            for (Node child : n.children) stack.push(child);
+        }
+        return true;
+    }
+
+    // ===================== LINK-CUT TREE =====================
+
+    // Makes root → node the preferred path with node at the root of its splay tree.
+    // Returns the last node where the climb joined the previously preferred path.
+    private Node access(Node node) {
+        Node last = null;
+        for (Node y = node; y != null; y = y.splayParent) {
+            splay(y);
+            y.right = last;
+            pull(y);
+            last = y;
+        }
+        splay(node);
+        return last;
+    }
+
+    private boolean isSplayRoot(Node x) {
+        Node p = x.splayParent;
+        return p == null || (p.left != x && p.right != x);
+    }
+
+    private void splay(Node x) {
+        // Push pending additions down from the splay root before rotating
+        Deque<Node> chain = new ArrayDeque<>();
+        for (Node y = x; ; y = y.splayParent) {
+            chain.push(y);
+            if (isSplayRoot(y)) break;
+        }
+        while (!chain.isEmpty()) push(chain.pop());
+
+        while (!isSplayRoot(x)) {
+            Node p = x.splayParent;
+            if (!isSplayRoot(p)) {
+                Node g = p.splayParent;
+                boolean zigZig = (g.left == p) == (p.left == x);
+                rotate(zigZig ? p : x);
+            }
+            rotate(x);
+        }
+    }
+
+    private void rotate(Node x) {
+        Node p = x.splayParent;
+        Node g = p.splayParent;
+        boolean pWasRoot = isSplayRoot(p);
+        if (p.left == x) {
+            p.left = x.right;
+            if (x.right != null) x.right.splayParent = p;
+            x.right = p;
+        } else {
+            p.right = x.left;
+            if (x.left != null) x.left.splayParent = p;
+            x.left = p;
+        }
+        p.splayParent = x;
+        x.splayParent = g; // keeps the path-parent pointer when p was the splay root
+        if (!pWasRoot) {
+            if (g.left == p) g.left = x;
+            else g.right = x;
+        }
+        pull(p);
+        pull(x);
+    }
+
+    private void pull(Node x) {
+        x.lockSum = x.locked + lockSum(x.left) + lockSum(x.right);
+    }
+
+    private void push(Node x) {
+        if (x.pendingAdd == 0) return;
+        applyAdd(x.left, x.pendingAdd);
+        applyAdd(x.right, x.pendingAdd);
+        x.pendingAdd = 0;
+    }
+
+    private static void applyAdd(Node x, int delta) {
+        if (x == null) return;
+        x.lockedDescendantCount += delta;
+        x.pendingAdd += delta;
+    }
+
+    private static int lockSum(Node x) {
+        return x == null ? 0 : x.lockSum;
+    }
+
+    public static void main(String[] args) {
+        List<String> nodeNames = List.of("World", "Asia", "Africa", "China", "India", "SouthAfrica", "Egypt");
+        Map<String, List<String>> adjList = new HashMap<>();
+        adjList.put("World", List.of("Asia", "Africa"));
+        adjList.put("Asia", List.of("China", "India"));
+        adjList.put("Africa", List.of("SouthAfrica", "Egypt"));
+        TreeOfSpaceDynamic tree = new TreeOfSpaceDynamic(nodeNames, adjList);
+
+        System.out.println("Lock China (9): " + tree.lock("China", 9));
+        System.out.println("Lock India (9): " + tree.lock("India", 9));
+        System.out.println("Upgrade Asia (9): " + tree.upgrade("Asia", 9));
+        System.out.println("Lock Egypt (10): " + tree.lock("Egypt", 10));
+        System.out.println("Move Africa under Asia: " + tree.moveSubtree("Africa", "Asia")); // false, Asia is locked
+        System.out.println("Unlock Asia (9): " + tree.unlock("Asia", 9));
+        System.out.println("Move Africa under Asia: " + tree.moveSubtree("Africa", "Asia"));
+        System.out.println("Lock Asia (9): " + tree.lock("Asia", 9)); // false, Egypt is now below Asia
+        System.out.println("Add Japan under Asia: " + tree.addChild("Asia", "Japan"));
+        System.out.println("Lock Japan (9): " + tree.lock("Japan", 9));
+        System.out.println("Remove Africa: " + tree.removeSubtree("Africa")); // false, Egypt is locked
+        System.out.println("Unlock Egypt (10): " + tree.unlock("Egypt", 10));
+        System.out.println("Remove Africa: " + tree.removeSubtree("Africa"));
+        System.out.println("Upgrade World (9): " + tree.upgrade("World", 9));
+    }
+}
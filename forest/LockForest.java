@@ -0,0 +1,468 @@
+package forest;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Many independent lock trees in one process.
+ *
+ * A TreeOfSpace per customer costs a HashMap, a Node object per node and an ArrayList per
+ * node for its children, scattered over the heap. Here every tree lives in a contiguous range
+ * of shared primitive arenas (parent, first child, next sibling, owner, locked-descendant
+ * count), indexed by base + local index. Links are stored as local indices, so a tree can be
+ * moved by copying its range. Names of all trees share one open-addressing table keyed by
+ * (tenant, name); each slot holds a global index and the owning tenant is checked on lookup.
+ *
+ * Per tree the semantics are those of moderate.TreeOfSpaceDescendantTracking: lock checks the
+ * node, its locked-descendant count and an ancestor walk; unlock needs the owner; upgrade
+ * needs no locked ancestor, at least one locked descendant and every locked descendant owned
+ * by the caller, found by a DFS that skips subtrees with a zero count.
+ *
+ * Ranges are bump-allocated. Removing or evicting a tree leaves a hole and tombstones in the
+ * name table; compact() slides the live trees down over the holes and rebuilds the table, and
+ * allocation compacts on its own before growing when a quarter of the arena is holes.
+ * evict() writes an idle tree (names, parents, owners) to the spill directory and frees its
+ * range; the next operation on it reloads it transparently. Locks survive eviction.
+ *
+ * Not thread-safe, like the single-tree engines.
+ */
+public class LockForest {
+    private static final int DEAD = -1; // owningTenant of a node in a hole
+
+    // One customer hierarchy: where it lives, or where it was spilled
+    private static final class Tenant {
+        final int id;
+        int base = -1, size;
+        long lastUsed;
+        Path spilled;
+
+        Tenant(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Path spillDir;
+    private final Map<Integer, Tenant> tenants = new HashMap<>();
+    private long clock; // operations so far, the time base for idleness
+
+    // Arenas, one slot per node of every resident tree
+    private String[] names = new String[1024];
+    private int[] owningTenant = new int[1024];
+    private int[] parent = new int[1024];      // local index, -1 at the root
+    private int[] firstChild = new int[1024];  // local index, -1 for a leaf
+    private int[] nextSibling = new int[1024]; // local index, -1 for the last child
+    private int[] lockedBy = new int[1024];    // -1 when unlocked
+    private int[] lockedBelow = new int[1024]; // locked nodes strictly below
+    private int top;   // arena slots in use, holes included
+    private int holes; // slots in freed ranges
+
+    // (tenant, name) -> global index + 1, 0 for empty; tombstoned slots keep a DEAD node
+    private int[] table = new int[2048];
+    private int tableUsed;
+
+    // Scratch for upgrade
+    private int[] stack = new int[64];
+    private int[] found = new int[64];
+
+    public LockForest(Path spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    // ===================== TREES =====================
+
+    // Complete m-ary tree in level order, as in the stdin format
+    public void addTree(int tenant, List<String> nodeNames, int m) {
+        int[] p = new int[nodeNames.size()];
+        for (int i = 0; i < p.length; i++) p[i] = i == 0 ? -1 : (i - 1) / m;
+        addTree(tenant, nodeNames, p);
+    }
+
+    // parent[i] is the index of node i's parent, -1 for the root
+    public void addTree(int tenant, List<String> nodeNames, int[] parentIndex) {
+        if (tenant < 0) throw new IllegalArgumentException("Tenant ids must be non-negative: " + tenant);
+        if (tenants.containsKey(tenant)) throw new IllegalArgumentException("Tenant already present: " + tenant);
+        int[] owners = new int[nodeNames.size()];
+        Arrays.fill(owners, -1);
+        Tenant t = new Tenant(tenant);
+        tenants.put(tenant, t);
+        place(t, nodeNames.toArray(new String[0]), parentIndex, owners);
+    }
+
+    public void removeTree(int tenant) {
+        Tenant t = tenants.remove(tenant);
+        if (t == null) return;
+        if (t.base >= 0) release(t);
+        if (t.spilled != null) deleteQuietly(t.spilled);
+    }
+
+    // Copies a tree into a fresh range and rebuilds its child lists and counters
+    private void place(Tenant t, String[] nodeNames, int[] parentIndex, int[] owners) {
+        int n = nodeNames.length;
+        int base = allocate(n);
+        for (int i = 0; i < n; i++) {
+            int g = base + i;
+            names[g] = nodeNames[i];
+            owningTenant[g] = DEAD; // claimed as each name goes into the table
+            parent[g] = parentIndex[i];
+            firstChild[g] = -1;
+            nextSibling[g] = -1;
+            lockedBy[g] = owners[i];
+            lockedBelow[g] = 0;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            int p = parentIndex[i];
+            if (p < 0) continue;
+            nextSibling[base + i] = firstChild[base + p];
+            firstChild[base + p] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            if (owners[i] >= 0) addToAncestors(base, i, 1);
+        }
+        t.base = base;
+        t.size = n;
+        t.spilled = null;
+        t.lastUsed = clock;
+        if ((tableUsed + n) * 2 > table.length) rebuildTable(top);
+        for (int i = 0; i < n; i++) {
+            owningTenant[base + i] = t.id;
+            if (!insertName(t.id, base + i)) {
+                release(t);
+                tenants.remove(t.id);
+                throw new IllegalArgumentException("Duplicate node name in tenant " + t.id + ": " + nodeNames[i]);
+            }
+        }
+    }
+
+    private void release(Tenant t) {
+        Arrays.fill(owningTenant, t.base, t.base + t.size, DEAD);
+        Arrays.fill(names, t.base, t.base + t.size, null);
+        holes += t.size;
+        t.base = -1;
+    }
+
+    // ===================== ARENA =====================
+
+    private int allocate(int n) {
+        if (top + n > names.length && holes >= names.length / 4) compact();
+        if (top + n > names.length) {
+            int capacity = names.length;
+            while (capacity < top + n) capacity *= 2;
+            names = Arrays.copyOf(names, capacity);
+            owningTenant = Arrays.copyOf(owningTenant, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            lockedBy = Arrays.copyOf(lockedBy, capacity);
+            lockedBelow = Arrays.copyOf(lockedBelow, capacity);
+        }
+        int base = top;
+        top += n;
+        return base;
+    }
+
+    // Slides every resident tree down over the holes, in arena order, and rebuilds the name table
+    public void compact() {
+        List<Tenant> resident = new ArrayList<>();
+        for (Tenant t : tenants.values()) if (t.base >= 0) resident.add(t);
+        resident.sort(Comparator.comparingInt(t -> t.base));
+        int to = 0;
+        for (Tenant t : resident) {
+            if (t.base != to) {
+                System.arraycopy(names, t.base, names, to, t.size);
+                System.arraycopy(owningTenant, t.base, owningTenant, to, t.size);
+                System.arraycopy(parent, t.base, parent, to, t.size);
+                System.arraycopy(firstChild, t.base, firstChild, to, t.size);
+                System.arraycopy(nextSibling, t.base, nextSibling, to, t.size);
+                System.arraycopy(lockedBy, t.base, lockedBy, to, t.size);
+                System.arraycopy(lockedBelow, t.base, lockedBelow, to, t.size);
+                t.base = to;
+            }
+            to += t.size;
+        }
+        Arrays.fill(names, to, top, null);
+        top = to;
+        holes = 0;
+        rebuildTable(top);
+    }
+
+    // ===================== NAME TABLE =====================
+
+    private static int hash(int tenant, String name) {
+        int h = tenant * 0x9E3779B9 + name.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    // The caller has made room; the node's owningTenant is already set
+    private boolean insertName(int tenant, int g) {
+        int mask = table.length - 1;
+        for (int s = hash(tenant, names[g]) & mask; ; s = (s + 1) & mask) {
+            int e = table[s] - 1;
+            if (e < 0) {
+                table[s] = g + 1;
+                tableUsed++;
+                return true;
+            }
+            if (e != g && owningTenant[e] == tenant && names[e].equals(names[g])) return false;
+        }
+    }
+
+    private int lookup(int tenant, String name) {
+        int mask = table.length - 1;
+        for (int s = hash(tenant, name) & mask; ; s = (s + 1) & mask) {
+            int e = table[s] - 1;
+            if (e < 0) return -1;
+            if (owningTenant[e] == tenant && names[e].equals(name)) return e;
+        }
+    }
+
+    // Live entries only; sized for at least twice the given node count
+    private void rebuildTable(int nodes) {
+        int capacity = 16;
+        while (capacity < nodes * 2 + 2) capacity *= 2;
+        table = new int[capacity];
+        tableUsed = 0;
+        int mask = capacity - 1;
+        for (int g = 0; g < top; g++) {
+            if (owningTenant[g] == DEAD) continue;
+            int s = hash(owningTenant[g], names[g]) & mask;
+            while (table[s] != 0) s = (s + 1) & mask;
+            table[s] = g + 1;
+            tableUsed++;
+        }
+    }
+
+    // ===================== OPERATIONS =====================
+
+    // Base of the tenant's range, reloading it from disk if it was evicted
+    private int resident(int tenant) {
+        Tenant t = tenants.get(tenant);
+        if (t == null) throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        if (t.base < 0) load(t);
+        t.lastUsed = ++clock;
+        return t.base;
+    }
+
+    public boolean lock(int tenant, String name, int uid) {
+        int base = resident(tenant);
+        int g = lookup(tenant, name);
+        if (g < 0) return false;
+        int v = g - base;
+        if (lockedBy[g] >= 0 || lockedBelow[g] > 0 || hasLockedAncestor(base, v)) return false;
+        lockedBy[g] = uid;
+        addToAncestors(base, v, 1);
+        return true;
+    }
+
+    public boolean unlock(int tenant, String name, int uid) {
+        int base = resident(tenant);
+        int g = lookup(tenant, name);
+        if (g < 0 || lockedBy[g] < 0 || lockedBy[g] != uid) return false;
+        lockedBy[g] = -1;
+        addToAncestors(base, g - base, -1);
+        return true;
+    }
+
+    public boolean upgrade(int tenant, String name, int uid) {
+        int base = resident(tenant);
+        int g = lookup(tenant, name);
+        if (g < 0) return false;
+        int v = g - base;
+        if (lockedBy[g] >= 0 || lockedBelow[g] == 0 || hasLockedAncestor(base, v)) return false;
+
+        // Pruned DFS: only children with a lock at or below them
+        int sp = 0, count = 0;
+        for (int c = firstChild[g]; c >= 0; c = nextSibling[base + c]) stack = push(stack, sp++, c);
+        while (sp > 0) {
+            int u = stack[--sp];
+            int gu = base + u;
+            if (lockedBy[gu] >= 0) {
+                if (lockedBy[gu] != uid) return false;
+                found = push(found, count++, u);
+                continue; // nothing below a locked node is locked
+            }
+            if (lockedBelow[gu] == 0) continue;
+            for (int c = firstChild[gu]; c >= 0; c = nextSibling[base + c]) stack = push(stack, sp++, c);
+        }
+
+        for (int k = 0; k < count; k++) {
+            lockedBy[base + found[k]] = -1;
+            addToAncestors(base, found[k], -1);
+        }
+        lockedBy[g] = uid;
+        addToAncestors(base, v, 1);
+        return true;
+    }
+
+    private static int[] push(int[] a, int at, int value) {
+        if (at == a.length) a = Arrays.copyOf(a, a.length * 2);
+        a[at] = value;
+        return a;
+    }
+
+    private boolean hasLockedAncestor(int base, int v) {
+        for (int p = parent[base + v]; p >= 0; p = parent[base + p]) {
+            if (lockedBy[base + p] >= 0) return true;
+        }
+        return false;
+    }
+
+    private void addToAncestors(int base, int v, int delta) {
+        for (int p = parent[base + v]; p >= 0; p = parent[base + p]) lockedBelow[base + p] += delta;
+    }
+
+    // ===================== EVICTION =====================
+
+    // Writes the tree to the spill directory and frees its range; false if already evicted
+    public boolean evict(int tenant) {
+        Tenant t = tenants.get(tenant);
+        if (t == null) throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        if (t.base < 0) return false;
+        Path file;
+        try {
+            // A fresh file, so forests sharing a spill directory never collide
+            file = Files.createTempFile(spillDir, "tenant-" + t.id + "-", ".bin");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Evicting tenant " + t.id, e);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(t.size);
+            for (int g = t.base; g < t.base + t.size; g++) {
+                out.writeUTF(names[g]);
+                out.writeInt(parent[g]);
+                out.writeInt(lockedBy[g]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Evicting tenant " + t.id, e);
+        }
+        release(t);
+        t.spilled = file;
+        return true;
+    }
+
+    // Evicts every resident tree not used in the last idleOps operations; returns how many
+    public int evictIdle(long idleOps) {
+        int evicted = 0;
+        for (Tenant t : tenants.values()) {
+            if (t.base >= 0 && clock - t.lastUsed >= idleOps && evict(t.id)) evicted++;
+        }
+        return evicted;
+    }
+
+    private void load(Tenant t) {
+        String[] nodeNames;
+        int[] parentIndex, owners;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(t.spilled)))) {
+            int n = in.readInt();
+            nodeNames = new String[n];
+            parentIndex = new int[n];
+            owners = new int[n];
+            for (int i = 0; i < n; i++) {
+                nodeNames[i] = in.readUTF();
+                parentIndex[i] = in.readInt();
+                owners[i] = in.readInt();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reloading tenant " + t.id, e);
+        }
+        Path file = t.spilled;
+        place(t, nodeNames, parentIndex, owners);
+        deleteQuietly(file);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // Best effort: a leftover spill file is never read again
+        }
+    }
+
+    // ===================== STATS =====================
+
+    public int tenantCount() {
+        return tenants.size();
+    }
+
+    public int residentNodes() {
+        return top - holes;
+    }
+
+    public boolean isResident(int tenant) {
+        Tenant t = tenants.get(tenant);
+        return t != null && t.base >= 0;
+    }
+
+    // ===================== DRIVER =====================
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Heap and op cost of many small trees: one moderate engine each versus one forest
+    public static void main(String args[] ) throws Exception {
+        int tenants = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int ops = 1 << 22;
+        List<String> nodeNames = new ArrayList<>();
+        for (int i = 0; i < size; i++) nodeNames.add("N" + i);
+        Map<String, List<String>> adjList = new HashMap<>();
+        for (int i = 1; i < size; i++) adjList.computeIfAbsent(nodeNames.get((i - 1) / 4), k -> new ArrayList<>()).add(nodeNames.get(i));
+
+        long before = usedHeap();
+        moderate.TreeOfSpaceDescendantTracking[] separate = new moderate.TreeOfSpaceDescendantTracking[tenants];
+        for (int t = 0; t < tenants; t++) separate[t] = new moderate.TreeOfSpaceDescendantTracking(nodeNames, adjList);
+        long separateBytes = usedHeap() - before;
+        Random random = new Random(1);
+        long t0 = System.nanoTime();
+        for (int k = 0; k < ops; k++) {
+            moderate.TreeOfSpaceDescendantTracking tree = separate[random.nextInt(tenants)];
+            String name = nodeNames.get(random.nextInt(size));
+            switch (random.nextInt(3)) {
+                case 0 -> tree.lock(name, 1);
+                case 1 -> tree.unlock(name, 1);
+                default -> tree.upgrade(name, 1);
+            }
+        }
+        long separateNs = System.nanoTime() - t0;
+        separate = null;
+
+        before = usedHeap();
+        Path dir = Files.createTempDirectory("forest");
+        LockForest forest = new LockForest(dir);
+        for (int t = 0; t < tenants; t++) forest.addTree(t, nodeNames, 4);
+        long forestBytes = usedHeap() - before;
+        random = new Random(1);
+        t0 = System.nanoTime();
+        for (int k = 0; k < ops; k++) {
+            int tenant = random.nextInt(tenants);
+            String name = nodeNames.get(random.nextInt(size));
+            switch (random.nextInt(3)) {
+                case 0 -> forest.lock(tenant, name, 1);
+                case 1 -> forest.unlock(tenant, name, 1);
+                default -> forest.upgrade(tenant, name, 1);
+            }
+        }
+        long forestNs = System.nanoTime() - t0;
+
+        System.out.printf("%d trees of %d nodes%n", tenants, size);
+        System.out.printf("separate engines: %6.1f MB, %4.0f ns/op%n", separateBytes / 1e6, separateNs / (double) ops);
+        System.out.printf("forest:           %6.1f MB, %4.0f ns/op%n", forestBytes / 1e6, forestNs / (double) ops);
+
+        // Spill the older half and touch each spilled tree once
+        t0 = System.nanoTime();
+        for (int t = 0; t < tenants / 2; t++) forest.evict(t);
+        long evictNs = System.nanoTime() - t0;
+        forest.compact();
+        System.out.printf("evicted half: %d resident nodes, %.1f us per eviction%n", forest.residentNodes(), evictNs / 1e3 / (tenants / 2));
+        t0 = System.nanoTime();
+        for (int t = 0; t < tenants / 2; t++) forest.lock(t, nodeNames.get(0), 2);
+        System.out.printf("reload on first use: %.1f us per tree%n", (System.nanoTime() - t0) / 1e3 / (tenants / 2));
+        for (int t = 0; t < tenants; t++) forest.removeTree(t);
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,202 @@
+package fuzz;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Differential fuzzer: random trees and op sequences run through the reference
+// (naive.TreeOfSpaceNaive) and every engine in Engines, compared op by op. The first
+// divergence of each engine is shrunk (delta debugging over the ops, then dropping unused
+// nodes) and printed as a self-contained reproduction; that engine then sits out the rest
+// of the run. Cases are independent, so one worker per core scales linearly.
+//
+// java fuzz.DifferentialFuzzer [--seconds S] [--threads T] [--seed S] [--engines a,b] [--replay SEED]
+public class DifferentialFuzzer {
+    private final List<Engines.Factory> engines;
+    private final Map<String, Boolean> diverged = new ConcurrentHashMap<>();
+    private final AtomicLong cases = new AtomicLong();
+    private final AtomicLong opsChecked = new AtomicLong();
+
+    DifferentialFuzzer(List<Engines.Factory> engines) {
+        this.engines = engines;
+    }
+
+    // Where an engine first disagreed with the reference
+    static final class Divergence {
+        final int at;
+        final String actual;
+
+        Divergence(int at, String actual) {
+            this.at = at;
+            this.actual = actual;
+        }
+    }
+
+    static boolean[] expected(FuzzCase c) {
+        Engine reference = Engines.REFERENCE.create.apply(c);
+        boolean[] out = new boolean[c.ops()];
+        for (int k = 0; k < c.ops(); k++) out[k] = c.apply(reference, k);
+        return out;
+    }
+
+    // null when the engine agrees on every op (or cannot load this tree)
+    static Divergence check(Engines.Factory engine, FuzzCase c, boolean[] expected) {
+        if (!engine.accepts(c)) return null;
+        int k = 0;
+        try {
+            Engine e = engine.create.apply(c);
+            for (; k < c.ops(); k++) {
+                boolean got = c.apply(e, k);
+                if (got != expected[k]) return new Divergence(k, String.valueOf(got));
+            }
+            return null;
+        } catch (Throwable t) {
+            return new Divergence(Math.min(k, c.ops() - 1), "exception " + t);
+        }
+    }
+
+    static boolean diverges(Engines.Factory engine, FuzzCase c) {
+        return check(engine, c, expected(c)) != null;
+    }
+
+    // ===================== MINIMIZATION =====================
+
+    static FuzzCase minimize(Engines.Factory engine, FuzzCase c, Divergence d) {
+        // Nothing after the first divergence matters
+        int[] prefix = new int[d.at + 1];
+        for (int k = 0; k <= d.at; k++) prefix[k] = k;
+        c = c.withOps(prefix);
+
+        while (true) {
+            FuzzCase before = c;
+            c = shrinkOps(engine, c);
+            c = pruneNodes(engine, c);
+            if (c.ops() == before.ops() && c.size() == before.size()) return c;
+        }
+    }
+
+    // ddmin: drop ever smaller chunks of ops while the divergence survives
+    private static FuzzCase shrinkOps(Engines.Factory engine, FuzzCase c) {
+        int granularity = 2;
+        while (c.ops() >= 2) {
+            int len = c.ops();
+            int chunk = (len + granularity - 1) / granularity;
+            boolean reduced = false;
+            for (int start = 0; start < len && !reduced; start += chunk) {
+                int end = Math.min(len, start + chunk);
+                int[] keep = new int[len - (end - start)];
+                for (int k = 0, j = 0; k < len; k++) if (k < start || k >= end) keep[j++] = k;
+                FuzzCase candidate = c.withOps(keep);
+                if (diverges(engine, candidate)) {
+                    c = candidate;
+                    granularity = Math.max(granularity - 1, 2);
+                    reduced = true;
+                }
+            }
+            if (!reduced) {
+                if (granularity >= len) break;
+                granularity = Math.min(len, granularity * 2);
+            }
+        }
+        return c;
+    }
+
+    // Removes nodes no op touches, last node first; their children move up a level
+    private static FuzzCase pruneNodes(Engines.Factory engine, FuzzCase c) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            boolean[] needed = new boolean[c.size()];
+            for (int k = 0; k < c.ops(); k++) {
+                if (c.node[k] < c.size()) needed[c.node[k]] = true;
+                if (c.type[k] == FuzzCase.MOVE_SUBTREE && c.other[k] < c.size()) needed[c.other[k]] = true;
+            }
+            for (int i = c.size() - 1; i >= 1; i--) {
+                if (needed[i]) continue;
+                FuzzCase candidate = c.without(i);
+                if (diverges(engine, candidate)) {
+                    c = candidate;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return c;
+    }
+
+    // ===================== RUNNING =====================
+
+    void runCase(long seed) {
+        FuzzCase c = FuzzCase.random(seed);
+        boolean[] expected = expected(c);
+        for (Engines.Factory engine : engines) {
+            if (diverged.containsKey(engine.name) || !engine.accepts(c)) continue;
+            Divergence d = check(engine, c, expected);
+            opsChecked.addAndGet(d == null ? c.ops() : d.at + 1);
+            if (d != null && diverged.putIfAbsent(engine.name, true) == null) report(engine, c, d);
+        }
+        cases.incrementAndGet();
+    }
+
+    private void report(Engines.Factory engine, FuzzCase original, Divergence d) {
+        FuzzCase small = minimize(engine, original, d);
+        boolean[] expected = expected(small);
+        Divergence sd = check(engine, small, expected);
+        String text = "DIVERGENCE in " + engine.name + " (seed " + original.seed + ", op " + (d.at + 1)
+            + " of " + original.ops() + " on " + original.size() + " nodes; minimized to "
+            + small.ops() + " ops on " + small.size() + " nodes)\n"
+            + small.describe(expected, sd.at, sd.actual);
+        synchronized (System.out) {
+            System.out.println(text);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = 60;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        Long replay = null;
+        Set<String> only = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seconds" -> seconds = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--replay" -> replay = Long.parseLong(args[++i]);
+                case "--engines" -> only = new HashSet<>(Arrays.asList(args[++i].split(",")));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        List<Engines.Factory> engines = new ArrayList<>();
+        for (Engines.Factory f : Engines.all()) if (only == null || only.contains(f.name)) engines.add(f);
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(engines);
+
+        if (replay != null) {
+            fuzzer.runCase(replay);
+            System.exit(fuzzer.diverged.isEmpty() ? 0 : 1);
+        }
+
+        System.out.println("seed " + seed + ", " + threads + " threads, " + seconds + " s, engines " + engines.stream().map(f -> f.name).toList());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong nextSeed = new AtomicLong(seed);
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                while (!stop.get() && fuzzer.diverged.size() < engines.size()) fuzzer.runCase(nextSeed.getAndIncrement());
+            });
+        }
+        pool.shutdown();
+        long start = System.nanoTime();
+        while (!pool.awaitTermination(Math.min(10, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime()))), TimeUnit.SECONDS)) {
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%d cases, %d ops checked, %.0f ops/s%n", fuzzer.cases.get(), fuzzer.opsChecked.get(),
+                fuzzer.opsChecked.get() / (elapsed / 1e9));
+            if (System.nanoTime() - deadline >= 0) stop.set(true);
+        }
+        System.out.println("done: " + fuzzer.cases.get() + " cases, " + fuzzer.opsChecked.get() + " ops checked, "
+            + fuzzer.diverged.size() + " of " + engines.size() + " engines diverged " + fuzzer.diverged.keySet());
+        System.exit(fuzzer.diverged.isEmpty() ? 0 : 1);
+    }
+}
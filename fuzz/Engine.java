@@ -0,0 +1,18 @@
+package fuzz;
+
+// One lock engine under test, driven by the stdin op codes: 1 lock, 2 unlock, 3 upgrade
+interface Engine {
+    boolean apply(int type, String name, int uid);
+
+    interface Op {
+        boolean apply(String name, int uid);
+    }
+
+    static Engine of(Op lock, Op unlock, Op upgrade) {
+        return (type, name, uid) -> switch (type) {
+            case 1 -> lock.apply(name, uid);
+            case 2 -> unlock.apply(name, uid);
+            default -> upgrade.apply(name, uid);
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package fuzz;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Every engine the fuzzer knows about. naive.TreeOfSpaceNaive is the reference; a new engine
+// joins the comparison by adding one line here.
+final class Engines {
+    static final class Factory {
+        final String name;
+        final boolean mAryOnly;     // loads only complete m-ary trees
+        final boolean changesTree;  // creates MutableEngines for cases with tree changes
+        final Function<FuzzCase, Engine> create;
+
+        Factory(String name, boolean mAryOnly, Function<FuzzCase, Engine> create) {
+            this(name, mAryOnly, false, create);
+        }
+
+        private Factory(String name, boolean mAryOnly, boolean changesTree, Function<FuzzCase, Engine> create) {
+            this.name = name;
+            this.mAryOnly = mAryOnly;
+            this.changesTree = changesTree;
+            this.create = create;
+        }
+
+        // An engine that supports addChild/removeSubtree/moveSubtree on any tree shape
+        static Factory changingTree(String name, Function<FuzzCase, MutableEngine> create) {
+            return new Factory(name, false, true, create::apply);
+        }
+
+        boolean accepts(FuzzCase c) {
+            return (!mAryOnly || c.m > 0) && (changesTree || !c.changesTree);
+        }
+    }
+
+    static final Factory REFERENCE = new Factory("naive", false, true, c -> {
+        if (c.changesTree) return new RebuildingReference(c);
+        naive.TreeOfSpaceNaive t = new naive.TreeOfSpaceNaive(c.nodeNames(), c.adjList());
+        return Engine.of(t::lock, t::unlock, t::upgrade);
+    });
+
+    static List<Factory> all() {
+        List<Factory> engines = new ArrayList<>();
+        engines.add(new Factory("optimize", false, c -> {
+            optimize.TreeOfSpaceDFSUpgrade t = new optimize.TreeOfSpaceDFSUpgrade(c.nodeNames(), c.adjList());
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("moderate", false, c -> {
+            moderate.TreeOfSpaceDescendantTracking t = new moderate.TreeOfSpaceDescendantTracking(c.nodeNames(), c.adjList());
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("summitted", false, c -> {
+            summitted_code.TestClass.TreeOfSpaceMySolution t = new summitted_code.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.parent);
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("summitted-parallel-handles", true, c -> {
+            summitted_code.TestClass.TreeOfSpaceMySolution t = summitted_code.TestClass.TreeOfSpaceMySolution.buildParallel(c.nodeNames(), c.m);
+            return Engine.of((s, u) -> t.lock(t.resolve(s), u), (s, u) -> t.unlock(t.resolve(s), u), (s, u) -> t.upgrade(t.resolve(s), u));
+        }));
+        engines.add(new Factory("threadsafe", true, c -> {
+            threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution t = new threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.m);
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("threadsafe-handles", true, c -> {
+            threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution t = new threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.m);
+            return Engine.of((s, u) -> t.lock(t.resolve(s), u), (s, u) -> t.unlock(t.resolve(s), u), (s, u) -> t.upgrade(t.resolve(s), u));
+        }));
+        engines.add(Factory.changingTree("dynamic", c -> {
+            dynamic.TreeOfSpaceDynamic t = new dynamic.TreeOfSpaceDynamic(c.nodeNames(), c.adjList());
+            Engine locks = Engine.of(t::lock, t::unlock, t::upgrade);
+            return new MutableEngine() {
+                @Override
+                public boolean apply(int type, String name, int uid) {
+                    return locks.apply(type, name, uid);
+                }
+
+                @Override
+                public boolean change(int type, String name, String other) {
+                    return switch (type) {
+                        case FuzzCase.ADD_CHILD -> t.addChild(name, other);
+                        case FuzzCase.REMOVE_SUBTREE -> t.removeSubtree(name);
+                        default -> t.moveSubtree(name, other);
+                    };
+                }
+            };
+        }));
+        for (summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.Layout layout
+                : summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.Layout.values()) {
+            engines.add(new Factory("cacheFriendly-" + layout, false, c -> {
+                summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.TreeOfSpaceMySolution t =
+                    new summitted_code.optimizing_solutions.cacheFriendlyLayout.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.parent, layout);
+                return Engine.of(t::lock, t::unlock, t::upgrade);
+            }));
+        }
+        engines.add(new Factory("heavyLight", false, c -> {
+            summitted_code.optimizing_solutions.heavyLightDecomposition.TestClass.TreeOfSpaceMySolution t =
+                new summitted_code.optimizing_solutions.heavyLightDecomposition.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.parent);
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("lazyImplicit", true, c -> {
+            summitted_code.optimizing_solutions.lazyImplicitTree.TestClass.TreeOfSpaceMySolution t =
+                new summitted_code.optimizing_solutions.lazyImplicitTree.TestClass.TreeOfSpaceMySolution(c.nodeNames(), c.m);
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        engines.add(new Factory("adaptive", false, c -> {
+            adaptive.AdaptiveTree t = new adaptive.AdaptiveTree(c.nodeNames(), c.parent);
+            return Engine.of(t::lock, t::unlock, t::upgrade);
+        }));
+        // Cases are shorter than one profiling window, so force a migration every few ops
+        engines.add(new Factory("adaptive-migrating", false, c -> {
+            adaptive.AdaptiveTree t = new adaptive.AdaptiveTree(c.nodeNames(), c.parent);
+            adaptive.AdaptiveTree.Kind[] kinds = adaptive.AdaptiveTree.Kind.values();
+            int[] ops = {0};
+            return (type, name, uid) -> {
+                if (++ops[0] % 5 == 0) t.switchTo(kinds[ops[0] / 5 % kinds.length]);
+                return Engine.of(t::lock, t::unlock, t::upgrade).apply(type, name, uid);
+            };
+        }));
+        // The case's tree is tenant 7 among decoys with the same names whose roots are held by
+        // another uid, so any leak between tenants shows up as a divergence
+        engines.add(new Factory("forest", false, c -> {
+            forest.LockForest f = new forest.LockForest(SPILL_DIR);
+            f.addTree(1, c.nodeNames(), c.parent);
+            f.addTree(7, c.nodeNames(), c.parent);
+            f.addTree(9, c.nodeNames(), c.parent);
+            f.lock(1, c.names[0], 99);
+            f.lock(9, c.names[0], 99);
+            return Engine.of((s, u) -> f.lock(7, s, u), (s, u) -> f.unlock(7, s, u), (s, u) -> f.upgrade(7, s, u));
+        }));
+        // Same, but the tree is spilled to disk and reloaded, and the decoys are churned so the
+        // arena compacts underneath it
+        engines.add(new Factory("forest-evicting", false, c -> {
+            forest.LockForest f = new forest.LockForest(SPILL_DIR);
+            f.addTree(1, c.nodeNames(), c.parent);
+            f.addTree(7, c.nodeNames(), c.parent);
+            int[] ops = {0};
+            Engine inner = Engine.of((s, u) -> f.lock(7, s, u), (s, u) -> f.unlock(7, s, u), (s, u) -> f.upgrade(7, s, u));
+            return (type, name, uid) -> {
+                ops[0]++;
+                if (ops[0] % 4 == 0) f.evict(7);
+                if (ops[0] % 9 == 0) {
+                    f.removeTree(1);
+                    f.addTree(1, c.nodeNames(), c.parent);
+                    f.lock(1, c.names[0], 99);
+                    f.compact();
+                }
+                return inner.apply(type, name, uid);
+            };
+        }));
+        // Budget of one node: every segment is evicted as soon as it is lock-free and unused
+        for (int cut = 1; cut <= 2; cut++) {
+            int cutDepth = cut;
+            engines.add(new Factory("tiered-cut" + cut, false, c -> {
+                try {
+                    java.nio.file.Path file = cutDepth == 2 ? java.nio.file.Files.createTempFile(SPILL_DIR, "tiered", ".bin") : null;
+                    tiered.TieredTree t = new tiered.TieredTree(c.nodeNames(), c.parent, cutDepth, 1, file);
+                    if (file != null) java.nio.file.Files.delete(file); // the open channel keeps it readable
+                    return Engine.of(t::lock, t::unlock, t::upgrade);
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }));
+        }
+        return engines;
+    }
+
+    private static final java.nio.file.Path SPILL_DIR;
+
+    static {
+        try {
+            SPILL_DIR = java.nio.file.Files.createTempDirectory("forest-fuzz");
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package fuzz;
+
+import java.util.*;
+
+// A tree plus an operation sequence. Node 0 is the root and parent[i] < i for every other
+// node, so removing a node and renumbering keeps the case valid. m > 0 marks a complete
+// m-ary tree (parent[i] == (i - 1) / m), the only shape some engines can load.
+//
+// Ops 1-3 are lock, unlock and upgrade. Ops 4-6 change the tree itself and only run on
+// engines that support it: addChild (other[k] is the new child), removeSubtree and
+// moveSubtree (other[k] is the new parent). Node indices at or past names.length stand for
+// names that are not in the initial tree ("X0", "X1", ...), which addChild can bring in.
+final class FuzzCase {
+    static final int ADD_CHILD = 4, REMOVE_SUBTREE = 5, MOVE_SUBTREE = 6;
+    private static final String[] OP_NAMES = {"", "lock", "unlock", "upgrade", "addChild", "removeSubtree", "moveSubtree"};
+
+    final long seed;
+    final String[] names;
+    final int[] parent;
+    final int m;
+    final int[] type, node, uid; // op k: type[k] on name(node[k]) by uid[k]
+    final int[] other;           // second node of a tree change, unused by ops 1-3
+    final boolean changesTree;   // some op is a tree change or names a node outside the initial tree
+
+    FuzzCase(long seed, String[] names, int[] parent, int m, int[] type, int[] node, int[] uid, int[] other) {
+        this.seed = seed;
+        this.names = names;
+        this.parent = parent;
+        this.m = m;
+        this.type = type;
+        this.node = node;
+        this.uid = uid;
+        this.other = other;
+        boolean changes = false;
+        for (int k = 0; k < type.length; k++) changes |= type[k] >= ADD_CHILD || node[k] >= names.length;
+        this.changesTree = changes;
+    }
+
+    String name(int v) {
+        return v < names.length ? names[v] : "X" + (v - names.length);
+    }
+
+    // Runs op k on the engine; a tree change only reaches engines whose factory accepts
+    // cases with changes, which create MutableEngines
+    boolean apply(Engine e, int k) {
+        if (type[k] < ADD_CHILD) return e.apply(type[k], name(node[k]), uid[k]);
+        return ((MutableEngine) e).change(type[k], name(node[k]), name(other[k]));
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    int ops() {
+        return type.length;
+    }
+
+    List<String> nodeNames() {
+        return Arrays.asList(names);
+    }
+
+    Map<String, List<String>> adjList() {
+        Map<String, List<String>> adj = new LinkedHashMap<>();
+        for (int i = 1; i < names.length; i++) {
+            adj.computeIfAbsent(names[parent[i]], k -> new ArrayList<>()).add(names[i]);
+        }
+        return adj;
+    }
+
+    // Mostly small trees with few uids, so conflicts, upgrades and deep paths are frequent
+    static FuzzCase random(long seed) {
+        Random random = new Random(seed);
+        int n = random.nextInt(10) == 0 ? 1 + random.nextInt(2000) : 1 + random.nextInt(40);
+        int[] parent = new int[n];
+        parent[0] = -1;
+        int m = 0;
+        switch (random.nextInt(5)) {
+            case 0 -> { // complete m-ary, as in the stdin format
+                m = 1 + random.nextInt(4);
+                for (int i = 1; i < n; i++) parent[i] = (i - 1) / m;
+            }
+            case 1 -> { // long paths with short side branches
+                for (int i = 1; i < n; i++) parent[i] = random.nextInt(5) == 0 ? random.nextInt(i) : i - 1;
+            }
+            case 2 -> { // bushy near the root
+                for (int i = 1; i < n; i++) parent[i] = random.nextInt(Math.min(i, 3));
+            }
+            default -> { // uniform random recursive tree
+                for (int i = 1; i < n; i++) parent[i] = random.nextInt(i);
+            }
+        }
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) names[i] = "N" + i;
+
+        int ops = 1 + random.nextInt(random.nextBoolean() ? 50 : 400);
+        int uids = 1 + random.nextInt(3);
+        // One case in four also changes the tree, with a few names to add
+        int spare = random.nextInt(4) == 0 ? 1 + random.nextInt(8) : 0;
+        int[] type = new int[ops], node = new int[ops], uid = new int[ops], other = new int[ops];
+        for (int k = 0; k < ops; k++) {
+            type[k] = spare > 0 && random.nextInt(4) == 0 ? ADD_CHILD + random.nextInt(3) : 1 + random.nextInt(3);
+            node[k] = random.nextInt(n + spare);
+            uid[k] = 1 + random.nextInt(uids);
+            if (type[k] == ADD_CHILD) other[k] = n + random.nextInt(spare);
+            else if (type[k] == MOVE_SUBTREE) other[k] = random.nextInt(n + spare);
+        }
+        return new FuzzCase(seed, names, parent, m, type, node, uid, other);
+    }
+
+    // Same tree, only the ops whose indices are kept
+    FuzzCase withOps(int[] keep) {
+        int[] t = new int[keep.length], v = new int[keep.length], u = new int[keep.length], o = new int[keep.length];
+        for (int k = 0; k < keep.length; k++) {
+            t[k] = type[keep[k]];
+            v[k] = node[keep[k]];
+            u[k] = uid[keep[k]];
+            o[k] = other[keep[k]];
+        }
+        return new FuzzCase(seed, names, parent, m, t, v, u, o);
+    }
+
+    // Same ops, node `v` (which no op may reference) removed: its children move up to its
+    // parent and the nodes after it, the names outside the tree included, are renumbered
+    FuzzCase without(int v) {
+        int n = names.length;
+        int[] renamed = new int[n];
+        for (int i = 0, j = 0; i < n; i++) renamed[i] = i == v ? -1 : j++;
+        String[] nn = new String[n - 1];
+        int[] np = new int[n - 1];
+        for (int i = 0; i < n; i++) {
+            if (i == v) continue;
+            int p = parent[i] == v ? parent[v] : parent[i];
+            nn[renamed[i]] = names[i];
+            np[renamed[i]] = p < 0 ? -1 : renamed[p];
+        }
+        int[] w = new int[node.length], o = new int[node.length];
+        for (int k = 0; k < node.length; k++) {
+            w[k] = node[k] < n ? renamed[node[k]] : node[k] - 1;
+            o[k] = other[k] < n ? renamed[other[k]] : other[k] - 1;
+        }
+        // A complete m-ary tree only stays complete when its last node goes
+        int nm = m > 0 && v == n - 1 ? m : 0;
+        return new FuzzCase(seed, nn, np, nm, type, w, uid, o);
+    }
+
+    String describe(boolean[] expected, int divergedAt, String actual) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("tree (").append(names.length).append(" nodes").append(m > 0 ? ", " + m + "-ary" : "").append("):\n");
+        for (int i = 0; i < names.length; i++) {
+            sb.append("  ").append(names[i]);
+            if (parent[i] >= 0) sb.append(" <- ").append(names[parent[i]]);
+            sb.append('\n');
+        }
+        sb.append("ops:\n");
+        for (int k = 0; k <= divergedAt; k++) {
+            sb.append("  ").append(OP_NAMES[type[k]]).append(' ').append(name(node[k])).append(' ');
+            if (type[k] < ADD_CHILD) sb.append(uid[k]);
+            else if (type[k] != REMOVE_SUBTREE) sb.append(name(other[k]));
+            sb.append("  -> ").append(expected[k]);
+            if (k == divergedAt) sb.append("   but got ").append(actual);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
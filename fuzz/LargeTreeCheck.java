@@ -0,0 +1,107 @@
+package fuzz;
+
+import java.util.*;
+
+// Differential check on trees big enough for summitted_code's fork/join upgrade scan, which
+// only runs on subtrees of PARALLEL_SCAN_THRESHOLD nodes or more; DifferentialFuzzer's cases
+// stay far below that. Each case is one large tree, m-ary or random, and rounds of: locks
+// scattered over the tree by one uid, now and then a foreign lock, then an upgrade of the
+// root or a node just below it by that uid. Upgrades therefore scan big subtrees both to the
+// end (granted) and with a foreign lock somewhere in them (cancelled early). tiered-cut2 runs
+// by default too: at this size its name index spans many pages, evicted and read back under
+// its one-node budget.
+//
+// java fuzz.LargeTreeCheck [--cases C] [--nodes N] [--seed S] [--engines a,b]
+public class LargeTreeCheck {
+
+    static FuzzCase largeCase(long seed, int n) {
+        Random random = new Random(seed);
+        int[] parent = new int[n];
+        parent[0] = -1;
+        int m = 0;
+        if (seed % 2 != 0) {
+            m = 2 + random.nextInt(3);
+            for (int i = 1; i < n; i++) parent[i] = (i - 1) / m;
+        } else {
+            // Random recursive tree with a bushy top, so the root's children are large too
+            for (int i = 1; i < n; i++) parent[i] = i < 8 ? 0 : random.nextInt(i);
+        }
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) names[i] = "N" + i;
+
+        int[] size = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            size[i]++;
+            if (i > 0) size[parent[i]] += size[i];
+        }
+        List<Integer> big = new ArrayList<>();
+        for (int i = 0; i < n; i++) if (size[i] >= summitted_code.TestClass.PARALLEL_SCAN_THRESHOLD) big.add(i);
+
+        List<int[]> ops = new ArrayList<>(); // type, node, uid
+        for (int round = 0; round < 20; round++) {
+            int locks = 1 + random.nextInt(40);
+            for (int k = 0; k < locks; k++) ops.add(new int[]{1, 1 + random.nextInt(n - 1), 1});
+            int foreign = random.nextInt(3) == 0 ? 1 + random.nextInt(n - 1) : -1;
+            if (foreign >= 0) ops.add(new int[]{1, foreign, 2});
+            int target = big.get(random.nextInt(big.size()));
+            ops.add(new int[]{3, target, 1});
+            ops.add(new int[]{3, target, 2}); // refused unless uid 2 holds everything below
+            ops.add(new int[]{2, target, 1});
+            if (foreign >= 0) ops.add(new int[]{2, foreign, 2});
+        }
+        int[] type = new int[ops.size()], node = new int[ops.size()], uid = new int[ops.size()];
+        for (int k = 0; k < ops.size(); k++) {
+            type[k] = ops.get(k)[0];
+            node[k] = ops.get(k)[1];
+            uid[k] = ops.get(k)[2];
+        }
+        return new FuzzCase(seed, names, parent, m, type, node, uid, new int[ops.size()]);
+    }
+
+    public static void main(String[] args) {
+        int cases = 6;
+        int n = 3 * summitted_code.TestClass.PARALLEL_SCAN_THRESHOLD;
+        long seed = 1;
+        Set<String> only = new HashSet<>(List.of("summitted", "summitted-parallel-handles", "tiered-cut2"));
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cases" -> cases = Integer.parseInt(args[++i]);
+                case "--nodes" -> n = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--engines" -> only = new HashSet<>(Arrays.asList(args[++i].split(",")));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (n < 2 * summitted_code.TestClass.PARALLEL_SCAN_THRESHOLD) {
+            throw new IllegalArgumentException("--nodes must be at least " + 2 * summitted_code.TestClass.PARALLEL_SCAN_THRESHOLD);
+        }
+
+        int failures = 0;
+        for (int c = 0; c < cases; c++) {
+            FuzzCase fc = largeCase(seed + c, n);
+            boolean[] expected = DifferentialFuzzer.expected(fc);
+            int granted = 0, refused = 0;
+            for (int k = 0; k < fc.ops(); k++) {
+                if (fc.type[k] == 3 && expected[k]) granted++;
+                else if (fc.type[k] == 3) refused++;
+            }
+            StringBuilder line = new StringBuilder("seed " + fc.seed + ": " + n + " nodes" + (fc.m > 0 ? ", " + fc.m + "-ary" : "")
+                + ", " + fc.ops() + " ops, upgrades " + granted + " granted / " + refused + " refused");
+            for (Engines.Factory engine : Engines.all()) {
+                if (!only.contains(engine.name) || !engine.accepts(fc)) continue;
+                DifferentialFuzzer.Divergence d = DifferentialFuzzer.check(engine, fc, expected);
+                if (d == null) {
+                    line.append(", ").append(engine.name).append(" ok");
+                } else {
+                    failures++;
+                    line.append("\n  DIVERGENCE in ").append(engine.name).append(" at op ").append(d.at + 1).append(": ")
+                        .append(new String[]{"", "lock", "unlock", "upgrade"}[fc.type[d.at]]).append(' ')
+                        .append(fc.name(fc.node[d.at])).append(' ').append(fc.uid[d.at])
+                        .append(" -> ").append(expected[d.at]).append(" but got ").append(d.actual);
+                }
+            }
+            System.out.println(line);
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,384 @@
+package fuzz;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Linearizability checker for threadsafe.ImprovedSolution. Each round, several threads hammer
+// a small tree with lock/unlock/upgrade while recording every call as an interval on a shared
+// logical clock (ticket taken just before the call and just after it returns). The history is
+// then searched, Wing & Gong style with Lowe's memoization of (linearized ops, model state),
+// for a sequential order that respects real time and reproduces every result under the
+// summitted_code semantics. A linearization that is found is replayed through
+// summitted_code.TestClass as well, so the model cannot drift from the real engine. Last,
+// the tree's subtree counts must equal those of a tree rebuilt from the locks it ends with.
+//
+// java fuzz.LinearizabilityChecker [--seconds S] [--threads T] [--ops K] [--nodes N] [--seed S]
+public class LinearizabilityChecker {
+
+    // One completed call
+    static final class Op {
+        final int id, thread, type, node, uid;
+        final long invoke, response;
+        final boolean result;
+
+        Op(int id, int thread, int type, int node, int uid, long invoke, long response, boolean result) {
+            this.id = id;
+            this.thread = thread;
+            this.type = type;
+            this.node = node;
+            this.uid = uid;
+            this.invoke = invoke;
+            this.response = response;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            return "T" + thread + " [" + invoke + ", " + response + "] "
+                + new String[]{"", "lock", "unlock", "upgrade"}[type] + " N" + node + " " + uid + " -> " + result;
+        }
+    }
+
+    // ===================== SEQUENTIAL MODEL =====================
+
+    // Sequential lock semantics on a small tree, with an undo journal and an incremental
+    // Zobrist hash of the owner array so the search can back-track and memoize cheaply
+    static final class Model {
+        private final int[] parent, tin, tout, euler;
+        private final int[] lockedBy;
+        private int[] journal = new int[64]; // (node, previous owner) pairs
+        private int journalSize;
+        long hash;
+
+        Model(int[] parent) {
+            int n = parent.length;
+            this.parent = parent;
+            lockedBy = new int[n];
+            Arrays.fill(lockedBy, -1);
+            tin = new int[n];
+            tout = new int[n];
+            euler = new int[n];
+            int[] size = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                size[i]++;
+                if (parent[i] >= 0) size[parent[i]] += size[i];
+            }
+            // parent[i] < i, so a node's preorder slot is known before its children are visited
+            int[] next = new int[n];
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    tin[i] = next[parent[i]];
+                    next[parent[i]] += size[i];
+                }
+                tout[i] = tin[i] + size[i] - 1;
+                euler[tin[i]] = i;
+                next[i] = tin[i] + 1;
+            }
+        }
+
+        int mark() {
+            return journalSize;
+        }
+
+        void undo(int mark) {
+            while (journalSize > mark) {
+                journalSize -= 2;
+                set(journal[journalSize], journal[journalSize + 1]);
+            }
+        }
+
+        boolean apply(int type, int v, int uid) {
+            switch (type) {
+                case 1:
+                    if (lockedBy[v] != -1 || hasLockedAncestor(v) || lockedBelow(v, -1) != 0) return false;
+                    record(v, uid);
+                    return true;
+                case 2:
+                    if (lockedBy[v] != uid) return false;
+                    record(v, -1);
+                    return true;
+                default:
+                    if (lockedBy[v] != -1 || hasLockedAncestor(v)) return false;
+                    if (lockedBelow(v, uid) <= 0) return false;
+                    for (int t = tin[v] + 1; t <= tout[v]; t++) if (lockedBy[euler[t]] != -1) record(euler[t], -1);
+                    record(v, uid);
+                    return true;
+            }
+        }
+
+        private boolean hasLockedAncestor(int v) {
+            for (int p = parent[v]; p >= 0; p = parent[p]) if (lockedBy[p] != -1) return true;
+            return false;
+        }
+
+        // Locked nodes strictly below v, or -1 if one is not owned by uid (uid -1 accepts all)
+        private int lockedBelow(int v, int uid) {
+            int count = 0;
+            for (int t = tin[v] + 1; t <= tout[v]; t++) {
+                int owner = lockedBy[euler[t]];
+                if (owner == -1) continue;
+                if (uid != -1 && owner != uid) return -1;
+                count++;
+            }
+            return count;
+        }
+
+        private void record(int v, int owner) {
+            if (journalSize + 2 > journal.length) journal = Arrays.copyOf(journal, journal.length * 2);
+            journal[journalSize++] = v;
+            journal[journalSize++] = lockedBy[v];
+            set(v, owner);
+        }
+
+        private void set(int v, int owner) {
+            hash ^= zobrist(v, lockedBy[v]) ^ zobrist(v, owner);
+            lockedBy[v] = owner;
+        }
+
+        private static long zobrist(int v, int owner) {
+            if (owner == -1) return 0;
+            long x = ((long) v << 32 | owner) * 0x9E3779B97F4A7C15L;
+            x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+            x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+            return x ^ (x >>> 31);
+        }
+    }
+
+    // ===================== WING-GONG SEARCH =====================
+
+    // Doubly linked list of call and return events in time order; linearizing an op lifts
+    // both of its events out, back-tracking puts them back
+    private static final class Event {
+        final Op op;
+        final boolean call;
+        Event match; // the call's return event, or the return's call event
+        Event prev, next;
+
+        Event(Op op, boolean call) {
+            this.op = op;
+            this.call = call;
+        }
+    }
+
+    private static final class StateKey {
+        final long[] linearized;
+        final long state;
+        final int hash;
+
+        StateKey(long[] linearized, long state) {
+            this.linearized = linearized;
+            this.state = state;
+            this.hash = 31 * Arrays.hashCode(linearized) + Long.hashCode(state);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey k && k.state == state && Arrays.equals(k.linearized, linearized);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Returns a linearization (ops in order) or null if none exists
+    static List<Op> linearize(int[] parent, List<Op> history) {
+        List<Event> events = new ArrayList<>();
+        for (Op op : history) {
+            Event call = new Event(op, true), ret = new Event(op, false);
+            call.match = ret;
+            ret.match = call;
+            events.add(call);
+            events.add(ret);
+        }
+        events.sort(Comparator.comparingLong(e -> e.call ? e.op.invoke : e.op.response));
+        Event head = new Event(null, false);
+        Event last = head;
+        for (Event e : events) {
+            last.next = e;
+            e.prev = last;
+            last = e;
+        }
+
+        Model model = new Model(parent);
+        long[] linearized = new long[(history.size() + 63) / 64];
+        Set<StateKey> seen = new HashSet<>();
+        Deque<Event> calls = new ArrayDeque<>();
+        Deque<Integer> marks = new ArrayDeque<>();
+
+        Event entry = head.next;
+        while (head.next != null) {
+            if (entry.call) {
+                Op op = entry.op;
+                int mark = model.mark();
+                boolean ok = model.apply(op.type, op.node, op.uid) == op.result;
+                long[] next = linearized.clone();
+                next[op.id >>> 6] |= 1L << op.id;
+                if (ok && seen.add(new StateKey(next, model.hash))) {
+                    calls.push(entry);
+                    marks.push(mark);
+                    linearized = next;
+                    lift(entry);
+                    entry = head.next;
+                } else {
+                    model.undo(mark);
+                    entry = entry.next;
+                }
+            } else {
+                // A return with its call still pending: the last choice was wrong
+                if (calls.isEmpty()) return null;
+                Event call = calls.pop();
+                model.undo(marks.pop());
+                linearized[call.op.id >>> 6] &= ~(1L << call.op.id);
+                unlift(call);
+                entry = call.next;
+            }
+        }
+        List<Op> order = new ArrayList<>();
+        for (Iterator<Event> it = calls.descendingIterator(); it.hasNext(); ) order.add(it.next().op);
+        return order;
+    }
+
+    private static void lift(Event call) {
+        call.prev.next = call.next;
+        if (call.next != null) call.next.prev = call.prev;
+        Event ret = call.match;
+        ret.prev.next = ret.next;
+        if (ret.next != null) ret.next.prev = ret.prev;
+    }
+
+    private static void unlift(Event call) {
+        Event ret = call.match;
+        ret.prev.next = ret;
+        if (ret.next != null) ret.next.prev = ret;
+        call.prev.next = call;
+        if (call.next != null) call.next.prev = call;
+    }
+
+    // ===================== RECORDING =====================
+
+    static List<Op> record(threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution tree, int[] parent, List<String> names, int threads, int opsPerThread, int uids, long seed) throws InterruptedException {
+        AtomicLong clock = new AtomicLong();
+        List<List<Op>> perThread = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            List<Op> ops = new ArrayList<>(opsPerThread);
+            perThread.add(ops);
+            int thread = t;
+            Random random = new Random(seed * 1_000_003L + t);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int k = 0; k < opsPerThread; k++) {
+                    int type = 1 + random.nextInt(3);
+                    int node = random.nextInt(parent.length);
+                    int uid = 1 + random.nextInt(uids);
+                    String name = names.get(node);
+                    long invoke = clock.getAndIncrement();
+                    boolean result = switch (type) {
+                        case 1 -> tree.lock(name, uid);
+                        case 2 -> tree.unlock(name, uid);
+                        default -> tree.upgrade(name, uid);
+                    };
+                    long response = clock.getAndIncrement();
+                    ops.add(new Op(0, thread, type, node, uid, invoke, response, result));
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread w : workers) w.join();
+
+        List<Op> history = new ArrayList<>();
+        for (List<Op> ops : perThread) {
+            for (Op op : ops) history.add(new Op(history.size(), op.thread, op.type, op.node, op.uid, op.invoke, op.response, op.result));
+        }
+        return history;
+    }
+
+    // The linearization must also be a valid sequential run of the real summitted_code engine
+    static boolean replaysOnSummitted(List<String> names, int[] parent, List<Op> order) {
+        summitted_code.TestClass.TreeOfSpaceMySolution tree = new summitted_code.TestClass.TreeOfSpaceMySolution(names, parent);
+        for (Op op : order) {
+            boolean got = switch (op.type) {
+                case 1 -> tree.lock(op.node, op.uid);
+                case 2 -> tree.unlock(op.node, op.uid);
+                default -> tree.upgrade(op.node, op.uid);
+            };
+            if (got != op.result) return false;
+        }
+        return true;
+    }
+
+    // Results alone miss a count that went wrong without changing an answer yet (an update
+    // lost or applied twice), so the counts the history left behind are compared with those
+    // of a fresh tree given the same locks
+    static boolean countsMatchRebuild(threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution tree, List<String> names, int m) {
+        threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution rebuilt = new threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution(names, m);
+        for (String name : names) {
+            int owner = tree.ownerOf(name);
+            if (owner != -1 && !rebuilt.lock(name, owner)) return false;
+        }
+        for (String name : names) {
+            if (tree.countLockedUnder(name) != rebuilt.countLockedUnder(name)) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = 30;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int opsPerThread = 40;
+        int nodes = 15;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seconds" -> seconds = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--ops" -> opsPerThread = Integer.parseInt(args[++i]);
+                case "--nodes" -> nodes = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.println("seed " + seed + ", " + threads + " threads x " + opsPerThread + " ops on " + nodes + " nodes, " + seconds + " s");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long rounds = 0, checked = 0;
+        Random random = new Random(seed);
+        while (System.nanoTime() - deadline < 0) {
+            // Binary or ternary trees, so paths and sibling conflicts both occur
+            int m = 2 + random.nextInt(2);
+            int[] parent = new int[nodes];
+            List<String> names = new ArrayList<>(nodes);
+            for (int i = 0; i < nodes; i++) {
+                parent[i] = i == 0 ? -1 : (i - 1) / m;
+                names.add("N" + i);
+            }
+            long roundSeed = random.nextLong();
+            threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution tree = new threadsafe.ImprovedSolution.TestClass.TreeOfSpaceMySolution(names, m);
+            List<Op> history = record(tree, parent, names, threads, opsPerThread, 1 + random.nextInt(3), roundSeed);
+            List<Op> order = linearize(parent, history);
+            String failure = order == null ? "NOT LINEARIZABLE"
+                : !replaysOnSummitted(names, parent, order) ? "LINEARIZATION REJECTED BY summitted_code"
+                : !countsMatchRebuild(tree, names, m) ? "COUNTS DIFFER FROM A REBUILT TREE"
+                : null;
+            if (failure != null) {
+                System.out.println(failure);
+                System.out.println(m + "-ary tree of " + nodes + " nodes, round seed " + roundSeed + ", history:");
+                history.stream().sorted(Comparator.comparingLong(o -> o.invoke)).forEach(o -> System.out.println("  " + o));
+                System.exit(1);
+            }
+            rounds++;
+            checked += history.size();
+        }
+        System.out.println("done: " + rounds + " histories, " + checked + " ops, all linearizable");
+    }
+}
@@ -0,0 +1,7 @@
+package fuzz;
+
+// An engine that also changes the shape of its tree: FuzzCase.ADD_CHILD, REMOVE_SUBTREE and
+// MOVE_SUBTREE. Only these engines are given cases with tree changes.
+interface MutableEngine extends Engine {
+    boolean change(int type, String name, String other);
+}
@@ -0,0 +1,88 @@
+package fuzz;
+
+import java.util.*;
+
+// Reference for cases that change the tree. naive.TreeOfSpaceNaive cannot change its shape,
+// so this keeps the live tree (parent of every name) and the held locks itself, decides each
+// change by brute force from the rules dynamic.TreeOfSpaceDynamic documents, and after every
+// change that goes through builds a fresh naive tree and takes the held locks again on it.
+// Lock, unlock and upgrade are answered by the naive tree.
+final class RebuildingReference implements MutableEngine {
+    private final Map<String, String> parentOf = new LinkedHashMap<>(); // live name -> parent, null for the root
+    private final Map<String, Integer> lockedBy = new HashMap<>();
+    private final String root;
+    private naive.TreeOfSpaceNaive tree;
+
+    RebuildingReference(FuzzCase c) {
+        root = c.names[0];
+        for (int i = 0; i < c.size(); i++) parentOf.put(c.names[i], c.parent[i] < 0 ? null : c.names[c.parent[i]]);
+        rebuild();
+    }
+
+    @Override
+    public boolean apply(int type, String name, int uid) {
+        if (!Engine.of(tree::lock, tree::unlock, tree::upgrade).apply(type, name, uid)) return false;
+        switch (type) {
+            case 1 -> lockedBy.put(name, uid);
+            case 2 -> lockedBy.remove(name);
+            default -> {
+                lockedBy.keySet().removeIf(v -> within(name, v));
+                lockedBy.put(name, uid);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean change(int type, String name, String other) {
+        switch (type) {
+            case FuzzCase.ADD_CHILD -> {
+                if (!parentOf.containsKey(name) || parentOf.containsKey(other)) return false;
+                parentOf.put(other, name);
+            }
+            case FuzzCase.REMOVE_SUBTREE -> {
+                if (!parentOf.containsKey(name) || name.equals(root) || holdsLock(name)) return false;
+                List<String> gone = new ArrayList<>();
+                for (String v : parentOf.keySet()) if (within(name, v)) gone.add(v);
+                parentOf.keySet().removeAll(gone);
+            }
+            default -> {
+                if (!parentOf.containsKey(name) || !parentOf.containsKey(other) || name.equals(root)) return false;
+                if (other.equals(parentOf.get(name))) return true;
+                if (within(name, other)) return false; // would make a cycle
+                if (holdsLock(name) && lockedOnPath(other)) return false;
+                parentOf.put(name, other);
+            }
+        }
+        rebuild();
+        return true;
+    }
+
+    // v is top or below it
+    private boolean within(String top, String v) {
+        for (; v != null; v = parentOf.get(v)) if (v.equals(top)) return true;
+        return false;
+    }
+
+    private boolean holdsLock(String top) {
+        for (String v : lockedBy.keySet()) if (within(top, v)) return true;
+        return false;
+    }
+
+    private boolean lockedOnPath(String name) {
+        for (String v = name; v != null; v = parentOf.get(v)) if (lockedBy.containsKey(v)) return true;
+        return false;
+    }
+
+    private void rebuild() {
+        Map<String, List<String>> adj = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : parentOf.entrySet()) {
+            if (e.getValue() != null) adj.computeIfAbsent(e.getValue(), k -> new ArrayList<>()).add(e.getKey());
+        }
+        tree = new naive.TreeOfSpaceNaive(new ArrayList<>(parentOf.keySet()), adj);
+        // Held locks never nest, so they can be taken again in any order
+        for (Map.Entry<String, Integer> e : lockedBy.entrySet()) {
+            if (!tree.lock(e.getKey(), e.getValue())) throw new IllegalStateException("lock on " + e.getKey() + " did not carry over");
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package moderate;
+
 import java.util.*;
 
 class Node {
@@ -104,17 +106,15 @@ public class TreeOfSpaceDescendantTracking {
         return false;
     }
 
-    private boolean collectLockedDescendantsByUid(Node node, int uid, List<Node> result) {
-        boolean found = false;
+    private boolean collectLockedDescendantsByUid(Node node, int uid, List<Node> result) { // false if any lock in the subtree belongs to another uid
         for (Node child : node.children) {
-            if (collectLockedDescendantsByUid(child, uid, result)) found = true;
+            if (!collectLockedDescendantsByUid(child, uid, result)) return false; // stop at the first foreign lock
         }
         if (node.isLocked) {
             if (node.lockedBy != uid) return false;
             result.add(node);
-            return true;
         }
-        return found;
+        return true;
     }
 
     public static void main(String[] args) {
@@ -1,3 +1,5 @@
+package naive;
+
 // Approach 1: Naive Tree Traversal
 // Lock, Unlock, and Upgrade operations using full ancestor and descendant traversals
 
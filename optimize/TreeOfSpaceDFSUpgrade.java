@@ -1,3 +1,5 @@
+package optimize;
+
 import java.util.*;
 
 class Node {
@@ -84,17 +86,16 @@ public class TreeOfSpaceDFSUpgrade {
         return false;
     }
 
+    // Returns false as soon as any lock in the subtree belongs to someone else
     private boolean collectLockedDescendants(Node node, int uid, List<Node> result) {
-        boolean found = false;
         for (Node child : node.children) {
-            if (collectLockedDescendants(child, uid, result)) found = true;
+            if (!collectLockedDescendants(child, uid, result)) return false;
         }
         if (node.isLocked) {
             if (node.lockedBy != uid) return false;
             result.add(node);
-            return true;
         }
-        return found;
+        return true;
     }
 
     public static void main(String[] args) {
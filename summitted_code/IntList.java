@@ -0,0 +1,36 @@
+package summitted_code;
+
+import java.util.Arrays;
+
+// Growable int buffer for node indices, so collecting nodes never boxes
+class IntList {
+    private int[] data;
+    private int size;
+
+    IntList(){
+        this(16);
+    }
+
+    IntList(int capacity){
+        data = new int[Math.max(capacity, 4)];
+    }
+
+    void add(int v){
+        if(size == data.length) data = Arrays.copyOf(data, size * 2);
+        data[size++] = v;
+    }
+
+    void addAll(IntList other){
+        if(size + other.size > data.length) data = Arrays.copyOf(data, Math.max(size * 2, size + other.size));
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    int get(int i){
+        return data[i];
+    }
+
+    int size(){
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package summitted_code;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal perfect hash (CHD, "hash, displace and compress") from a fixed name list to the
+// dense indices 0..n-1. Keys are hashed into n / LAMBDA buckets; each bucket stores one
+// displacement seed chosen at build time so its keys land on free slots. A lookup is one
+// seed read, one slot read and one equals() against the stored name, starting from the
+// String's cached hashCode(). About 1.33 ints per key, against a HashMap entry, its bucket
+// slot and a boxed value.
+//
+// Distinct names that share a hashCode() cannot be told apart by any seed, so those few
+// (about n² / 2^33 of them) go to a small overflow map instead.
+class PerfectHashIndex {
+    private static final int LAMBDA = 3; // average keys per bucket
+    private static final int MAX_SEED = 1 << 16; // give up on a salt after this many seeds for one bucket
+
+    private final List<String> keys;
+    private int[] seeds;   // seed >= 0: displacement; seed < 0: singleton placed at -seed - 1
+    private int[] indexAt; // slot → index into keys
+    private Map<String, Integer> overflow; // names whose hashCode() is shared, null if none
+    private long salt;
+
+    PerfectHashIndex(List<String> keys){
+        this.keys = keys;
+        // A salt only fails when some bucket cannot be placed, which is rare; a fresh one fixes it
+        long s = 0x9E3779B97F4A7C15L;
+        while(!build(s)) s = mix(s + 0x632BE59BD9B4E019L);
+        salt = s;
+    }
+
+    // O(length of name) - index of name, or -1 when it is not one of the keys
+    int indexOf(String name){
+        if(indexAt.length > 0){
+            long h = mix(salt ^ name.hashCode());
+            int seed = seeds[bucketOf(h, seeds.length)];
+            int index = indexAt[seed < 0 ? -seed - 1 : slotOf(h, seed, indexAt.length)];
+            if(keys.get(index).equals(name)) return index;
+        }
+        return overflow == null ? -1 : overflow.getOrDefault(name, -1);
+    }
+
+    private boolean build(long s){
+        int n = keys.size();
+        int buckets = Math.max(1, n / LAMBDA);
+        long[] h = new long[n];
+        for(int i = 0; i < n; i++) h[i] = mix(s ^ keys.get(i).hashCode());
+
+        // Counting sort of the keys by bucket
+        int[] start = new int[buckets + 1];
+        for(int i = 0; i < n; i++) start[bucketOf(h[i], buckets) + 1]++;
+        for(int b = 0; b < buckets; b++) start[b + 1] += start[b];
+        int[] members = new int[n];
+        int[] fill = new int[buckets];
+        for(int i = 0; i < n; i++){
+            int b = bucketOf(h[i], buckets);
+            members[start[b] + fill[b]++] = i;
+        }
+
+        // Equal hashes always share a bucket: move them to the overflow map
+        Map<String, Integer> shared = null;
+        for(int b = 0; b < buckets; b++){
+            for(int k = start[b]; k < start[b] + fill[b]; k++){
+                for(int j = start[b]; j < k; j++){
+                    if(h[members[j]] != h[members[k]]) continue;
+                    if(shared == null) shared = new HashMap<>();
+                    share(shared, members[j]);
+                    share(shared, members[k]);
+                }
+            }
+            if(shared == null) continue;
+            // Compact the bucket down to the names that stay in the table
+            int kept = start[b];
+            for(int k = start[b]; k < start[b] + fill[b]; k++){
+                if(!shared.containsKey(keys.get(members[k]))) members[kept++] = members[k];
+            }
+            fill[b] = kept - start[b];
+        }
+        int size = n - (shared == null ? 0 : shared.size());
+
+        // Buckets by size, largest first
+        int maxSize = 0;
+        for(int b = 0; b < buckets; b++) maxSize = Math.max(maxSize, fill[b]);
+        int[] bySize = new int[maxSize + 2];
+        for(int b = 0; b < buckets; b++) bySize[maxSize - fill[b] + 1]++;
+        for(int k = 1; k < bySize.length; k++) bySize[k] += bySize[k - 1];
+        int[] order = new int[buckets];
+        for(int b = 0; b < buckets; b++) order[bySize[maxSize - fill[b]]++] = b;
+
+        int[] seedOf = new int[buckets];
+        int[] index = new int[size];
+        boolean[] taken = new boolean[size];
+        int[] slots = new int[maxSize];
+        int nextFree = 0;
+        for(int b : order){
+            int count = fill[b];
+            if(count == 0) break;
+            if(count == 1){
+                // Singletons skip the seed search and take the next free slot directly
+                while(taken[nextFree]) nextFree++;
+                taken[nextFree] = true;
+                index[nextFree] = members[start[b]];
+                seedOf[b] = -nextFree - 1;
+                continue;
+            }
+            int seed = 0;
+            search:
+            for(; seed < MAX_SEED; seed++){
+                for(int k = 0; k < count; k++){
+                    int slot = slotOf(h[members[start[b] + k]], seed, size);
+                    if(taken[slot]) continue search;
+                    for(int j = 0; j < k; j++) if(slots[j] == slot) continue search;
+                    slots[k] = slot;
+                }
+                break;
+            }
+            if(seed == MAX_SEED) return false;
+            for(int k = 0; k < count; k++){
+                taken[slots[k]] = true;
+                index[slots[k]] = members[start[b] + k];
+            }
+            seedOf[b] = seed;
+        }
+        seeds = seedOf;
+        indexAt = index;
+        overflow = shared;
+        return true;
+    }
+
+    private void share(Map<String, Integer> shared, int i){
+        Integer previous = shared.putIfAbsent(keys.get(i), i);
+        if(previous != null && previous != i) throw new IllegalArgumentException("Duplicate name: " + keys.get(i));
+    }
+
+    private static int bucketOf(long h, int buckets){
+        return (int) (((h >>> 32) * buckets) >>> 32);
+    }
+
+    private static int slotOf(long h, int seed, int size){
+        long x = mix(h ^ (seed * 0xBF58476D1CE4E5B9L));
+        return (int) (((x >>> 32) * size) >>> 32);
+    }
+
+    // splitmix64 finaliser
+    private static long mix(long x){
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
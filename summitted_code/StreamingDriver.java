@@ -0,0 +1,178 @@
+package summitted_code;
+
+import java.io.*;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Streaming driver for TestClass.TreeOfSpaceMySolution.
+ *
+ * TestClass.main reads q and loops exactly q times, so it cannot sit in a pipeline fed by a
+ * live source. This driver reads the same header (n, m, a q line that is accepted and
+ * ignored, then n names) and then takes "type name uid" lines until EOF.
+ *
+ * A reader thread parses lines into fixed-size chunks of primitive arrays, resolving names to
+ * handles as it goes, and hands them to the processing thread through a bounded queue. Chunks
+ * come from a fixed pool and go back to it once processed, so memory stays constant however
+ * long the stream runs. The processor answers a whole chunk into one byte buffer and writes it
+ * with a single unbuffered write, so results leave in chunk-sized pieces.
+ *
+ * A chunk is handed over when it is full or when the input has nothing more buffered, so a
+ * slow live source still gets an answer per event instead of waiting for a chunk to fill.
+ * Backpressure runs the other way: a slow consumer blocks the write, the queue fills, the
+ * reader blocks on put and stops reading, and the pipe pushes back on the producer.
+ *
+ * java summitted_code.StreamingDriver < header_then_events
+ */
+public class StreamingDriver {
+    static final int CHUNK = 1 << 12;  // ops per chunk
+    static final int IN_FLIGHT = 4;    // chunks queued between reader and processor
+
+    private static final byte[] TRUE = "true\n".getBytes();
+    private static final byte[] FALSE = "false\n".getBytes();
+
+    // One batch of parsed ops; size == -1 marks the end of input
+    static final class Chunk {
+        final int[] type = new int[CHUNK];
+        final int[] handle = new int[CHUNK];
+        final int[] userId = new int[CHUNK];
+        int size;
+    }
+
+    private final TestClass.TreeOfSpaceMySolution tree;
+    private final BufferedReader in;
+    private final OutputStream out;
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(IN_FLIGHT);
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(IN_FLIGHT + 1);
+    private final byte[] answers = new byte[CHUNK * FALSE.length];
+    private volatile Throwable readerFailure;
+
+    StreamingDriver(TestClass.TreeOfSpaceMySolution tree, BufferedReader in, OutputStream out){
+        this.tree = tree;
+        this.in = in;
+        this.out = out;
+        // One more chunk than the queue holds, so the reader can fill one while the queue is full
+        for(int i = 0; i < IN_FLIGHT + 1; i++) free.add(new Chunk());
+    }
+
+    // ===================== READER =====================
+
+    private void readLoop(){
+        Chunk chunk = null;
+        try {
+            chunk = free.take();
+            chunk.size = 0;
+            String line;
+            while((line = in.readLine()) != null){
+                if(parse(line, chunk)) chunk.size++;
+                if(chunk.size == CHUNK || (chunk.size > 0 && !in.ready())){
+                    full.put(chunk);
+                    chunk = null;
+                    chunk = free.take();
+                    chunk.size = 0;
+                }
+            }
+            if(chunk.size > 0){
+                full.put(chunk);
+                chunk = free.take();
+            }
+            chunk.size = -1;
+            full.put(chunk);
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch(Throwable t){
+            readerFailure = t;
+            try {
+                // Queries parsed before the bad line are still answered, then the failure is reported
+                if(chunk != null && chunk.size > 0) full.put(chunk);
+                Chunk end = new Chunk();
+                end.size = -1;
+                full.put(end);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Parses "type name uid" into the next slot of the chunk; blank lines are skipped
+    private boolean parse(String line, Chunk chunk){
+        int len = line.length(), i = 0;
+        while(i < len && line.charAt(i) <= ' ') i++;
+        if(i == len) return false;
+
+        int type = line.charAt(i++) - '0';
+        if(type < 1 || type > 3 || (i < len && line.charAt(i) > ' ')) throw new IllegalArgumentException("Malformed query: " + line);
+        while(i < len && line.charAt(i) <= ' ') i++;
+        int nameStart = i;
+        while(i < len && line.charAt(i) > ' ') i++;
+        int nameEnd = i;
+        while(i < len && line.charAt(i) <= ' ') i++;
+        if(nameStart == nameEnd || i == len) throw new IllegalArgumentException("Malformed query: " + line);
+        int userId = Integer.parseInt(line.substring(i).trim());
+
+        int k = chunk.size;
+        chunk.type[k] = type;
+        chunk.handle[k] = tree.resolve(line.substring(nameStart, nameEnd));
+        chunk.userId[k] = userId;
+        return true;
+    }
+
+    // ===================== PROCESSOR =====================
+
+    void run() throws Exception {
+        Thread reader = new Thread(this::readLoop, "query-reader");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            while(true){
+                Chunk chunk = full.take();
+                if(chunk.size < 0) break;
+                int len = 0;
+                for(int k = 0; k < chunk.size; k++){
+                    byte[] answer = apply(chunk.type[k], chunk.handle[k], chunk.userId[k]) ? TRUE : FALSE;
+                    System.arraycopy(answer, 0, answers, len, answer.length);
+                    len += answer.length;
+                }
+                free.put(chunk);
+                out.write(answers, 0, len);
+                out.flush();
+            }
+        } catch(IOException e){
+            // Downstream closed the pipe: nothing left to answer to
+            reader.interrupt();
+            return;
+        }
+        if(readerFailure != null) throw new IOException("Reading queries failed", readerFailure);
+    }
+
+    private boolean apply(int type, int handle, int userId){
+        if(handle < 0) return false;
+        return switch(type){
+            case 1 -> tree.lock(handle, userId);
+            case 2 -> tree.unlock(handle, userId);
+            case 3 -> tree.upgrade(handle, userId);
+            default -> false;
+        };
+    }
+
+    public static void main(String args[] ) throws Exception {
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in), 1 << 16);
+
+        int n = Integer.parseInt(br.readLine().trim());
+        int m = Integer.parseInt(br.readLine().trim());
+        br.readLine(); // q: kept for input compatibility, the stream runs until EOF
+
+        List<String> nodeNames = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            nodeNames.add(br.readLine().trim());
+        }
+
+        TestClass.TreeOfSpaceMySolution tree = n >= TestClass.PARALLEL_BUILD_THRESHOLD
+            ? TestClass.TreeOfSpaceMySolution.buildParallel(nodeNames, m)
+            : new TestClass.TreeOfSpaceMySolution(nodeNames, m);
+
+        new StreamingDriver(tree, br, new FileOutputStream(FileDescriptor.out)).run();
+    }
+}
@@ -2,143 +2,272 @@ package summitted_code;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 class Node {
+    int id; // index into nodeNames and every per-node array
     String name;
     Node parent;
     List<Node> children;
     boolean isLocked;
     int lockedBy;
-    Set<Node> lockedDescendants; // Track locked descendants for O(1) check
-    int depth; // Store depth for binary lifting
 
-    public Node(String name){
+    public Node(int id, String name){
+        this.id = id;
         this.name = name;
         this.children = new ArrayList<>();
         this.isLocked = false;
         this.lockedBy = -1;
-        this.lockedDescendants = new HashSet<>();
-        this.depth = 0;
     }
 }
 
 public class TestClass {
-    static class TreeOfSpaceMySolution{
+    // Inputs at least this large are built with TreeOfSpaceMySolution.buildParallel
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 16;
+    // Subtrees at least this large are scanned by upgrade with fork/join
+    public static final int PARALLEL_SCAN_THRESHOLD = 1 << 15;
+    // Smallest slice of the Euler tour a scan task will split off
+    static final int MIN_SCAN_SLICE = 1 << 12;
 
-        private Map<String, Node> nodeMap = new HashMap<>();
-        private Node[][] ancestor; // Binary lifting table: ancestor[i][j] = 2^j th ancestor of node i
-        private int maxLog; // Maximum log value needed
+    public static class TreeOfSpaceMySolution{
+
+        private PerfectHashIndex nameIndex; // name → index into nodes, built once the names are known
+        private Node[] nodes; // nodes[i] is the node named nodeNames.get(i)
         private List<String> nodeNames; // Store node names for indexing
+        private int[] tin, tout; // Euler tour: subtree of i is euler[tin[i]..tout[i]]
+        private int[] euler; // node indices in DFS preorder
+        // Fenwick trees over Euler positions 1..n. A locked node u adds 1 to the range
+        // [tin[u], tout[u]] of coverTree and to the point tin[u] of lockedTree, so locked
+        // ancestors and locked descendants are each one O(log n) query.
+        private int[] coverTree, lockedTree;
 
+        // Complete m-ary layout: children of node i are m*i+1 .. m*i+m
         public TreeOfSpaceMySolution(List<String> nodeNames, int m){
+            this(nodeNames, mAryParents(nodeNames.size(), m));
+        }
+
+        // Arbitrary adjacency list, as accepted by moderate.TreeOfSpaceDescendantTracking
+        public TreeOfSpaceMySolution(List<String> nodeNames, Map<String, List<String>> adjList){
+            this(nodeNames, parentsFromAdjacency(nodeNames, adjList));
+        }
+
+        // General loader: parent[i] is the index of node i's parent, -1 for the root.
+        // Everything below is iterative, so a 10M-deep chain builds without recursion.
+        public TreeOfSpaceMySolution(List<String> nodeNames, int[] parent){
             this.nodeNames = nodeNames;
-            
+            int n = nodeNames.size();
+
             // O(n) - Create nodes
-            for(String name : nodeNames){
-                nodeMap.put(name, new Node(name));
+            nodes = new Node[n];
+            for(int i = 0; i < n; i++){
+                nodes[i] = new Node(i, nodeNames.get(i));
             }
+            nameIndex = new PerfectHashIndex(nodeNames);
 
             // O(n) - Build tree structure
-            int idx = 1;
-            for(int i = 0; i < nodeNames.size(); i++){
-                Node parent = nodeMap.get(nodeNames.get(i));
-                for(int j = 0; j < m && idx < nodeNames.size(); j++){
-                    Node child = nodeMap.get(nodeNames.get(idx++));
-                    parent.children.add(child);
-                    child.parent = parent;
+            int root = -1;
+            for(int i = 0; i < n; i++){
+                if(parent[i] < 0){
+                    if(root >= 0) throw new IllegalArgumentException("More than one root: " + nodeNames.get(root) + ", " + nodeNames.get(i));
+                    root = i;
+                } else {
+                    nodes[i].parent = nodes[parent[i]];
+                    nodes[parent[i]].children.add(nodes[i]);
                 }
             }
-            
-            // O(n) - Calculate depths using DFS
-            calculateDepths(nodeMap.get(nodeNames.get(0)), 0);
-            
-            // O(n log h) - Precompute binary lifting table
-            precomputeBinaryLifting();
+            if(root < 0) throw new IllegalArgumentException("No root: every node has a parent");
+
+            // O(n) - Euler tour with an explicit stack
+            eulerTour(root);
+
+            coverTree = new int[n + 1];
+            lockedTree = new int[n + 1];
         }
-        
-        // O(n) - Calculate depth of each node using DFS
-        private void calculateDepths(Node node, int depth) {
-            node.depth = depth;
-            for(Node child : node.children) {
-                calculateDepths(child, depth + 1);
-            }
+
+        // Same tree as TreeOfSpaceMySolution(nodeNames, m), built on all cores: node creation,
+        // wiring and each depth level of the Euler tour run as parallel loops on the
+        // common ForkJoinPool. Every array ends up identical to the sequential build.
+        public static TreeOfSpaceMySolution buildParallel(List<String> nodeNames, int m){
+            return new TreeOfSpaceMySolution(nodeNames, m, true);
         }
-        
-        // O(n log h) - Precompute binary lifting table
-        private void precomputeBinaryLifting() {
+
+        private TreeOfSpaceMySolution(List<String> nodeNames, int m, boolean parallel){
+            this.nodeNames = nodeNames;
             int n = nodeNames.size();
-            maxLog = (int) Math.ceil(Math.log(n) / Math.log(2));
-            ancestor = new Node[n][maxLog + 1];
-            
-            // Initialize first ancestor (parent)
-            for(int i = 0; i < n; i++) {
-                Node node = nodeMap.get(nodeNames.get(i));
-                ancestor[i][0] = node.parent;
-            }
-            
-            // Fill the table using dynamic programming
-            for(int j = 1; j <= maxLog; j++) {
-                for(int i = 0; i < n; i++) {
-                    Node node = ancestor[i][j-1];
-                    if(node != null) {
-                        int parentIndex = nodeNames.indexOf(node.name);
-                        ancestor[i][j] = ancestor[parentIndex][j-1];
-                    } else {
-                        ancestor[i][j] = null;
-                    }
+
+            // O(n / p) - Create nodes
+            nodes = new Node[n];
+            indices(0, n, parallel).forEach(i -> nodes[i] = new Node(i, nodeNames.get(i)));
+            nameIndex = new PerfectHashIndex(nodeNames);
+
+            // O(n / p) - Each parent wires its own children, so no two tasks touch the same list
+            indices(0, n, parallel).forEach(i -> {
+                Node node = nodes[i];
+                long first = (long) m * i + 1;
+                for(long c = first; c < first + m && c < n; c++){
+                    Node child = nodes[(int) c];
+                    child.parent = node;
+                    node.children.add(child);
                 }
+            });
+
+            if(m < 2 || n < 2) {
+                // A chain has one node per level: nothing to parallelise
+                eulerTour(0);
+            } else {
+                eulerTourByLevel(m, parallel);
             }
+
+            coverTree = new int[n + 1];
+            lockedTree = new int[n + 1];
         }
-        
-        // O(log h) - Find kth ancestor using binary lifting
-        private Node getKthAncestor(Node node, int k) {
-            int nodeIndex = nodeNames.indexOf(node.name);
-            for(int j = 0; j <= maxLog && node != null; j++) {
-                if((k & (1 << j)) != 0) {
-                    node = ancestor[nodeIndex][j];
-                    if(node != null) {
-                        nodeIndex = nodeNames.indexOf(node.name);
+
+        // Implicit m-ary layout: level L is the index range [start(L), start(L+1)), so levels
+        // are known up front. Subtree sizes are summed bottom-up and preorder entry times
+        // assigned top-down, one parallel loop per level.
+        private void eulerTourByLevel(int m, boolean parallel){
+            int n = nodes.length;
+            List<Integer> levelStart = new ArrayList<>();
+            for(long start = 0, width = 1; start < n; start += width, width *= m) levelStart.add((int) start);
+            levelStart.add(n);
+            int levels = levelStart.size() - 1;
+
+            int[] size = new int[n];
+            for(int L = levels - 1; L >= 0; L--){
+                indices(levelStart.get(L), levelStart.get(L + 1), parallel).forEach(i -> {
+                    int total = 1;
+                    for(Node child : nodes[i].children) total += size[child.id];
+                    size[i] = total;
+                });
+            }
+
+            tin = new int[n];
+            tout = new int[n];
+            euler = new int[n];
+            for(int L = 0; L < levels; L++){
+                indices(levelStart.get(L), levelStart.get(L + 1), parallel).forEach(i -> {
+                    euler[tin[i]] = i;
+                    tout[i] = tin[i] + size[i] - 1;
+                    int next = tin[i] + 1;
+                    for(Node child : nodes[i].children){
+                        tin[child.id] = next;
+                        next += size[child.id];
                     }
+                });
+            }
+        }
+
+        private static IntStream indices(int from, int to, boolean parallel){
+            IntStream range = IntStream.range(from, to);
+            return parallel ? range.parallel() : range;
+        }
+
+        private static int[] mAryParents(int n, int m){
+            int[] parent = new int[n];
+            parent[0] = -1;
+            for(int i = 1; i < n; i++) parent[i] = (i - 1) / m;
+            return parent;
+        }
+
+        private static int[] parentsFromAdjacency(List<String> nodeNames, Map<String, List<String>> adjList){
+            Map<String, Integer> index = new HashMap<>();
+            for(int i = 0; i < nodeNames.size(); i++) index.put(nodeNames.get(i), i);
+            int[] parent = new int[nodeNames.size()];
+            Arrays.fill(parent, -1);
+            for(Map.Entry<String, List<String>> e : adjList.entrySet()){
+                int p = index.get(e.getKey());
+                for(String child : e.getValue()) parent[index.get(child)] = p;
+            }
+            return parent;
+        }
+
+        // O(n) - DFS entry/exit times (iterative preorder)
+        private void eulerTour(int root) {
+            int n = nodes.length;
+            tin = new int[n];
+            tout = new int[n];
+            euler = new int[n];
+            int[] stack = new int[n];
+            int[] nextChild = new int[n];
+            int top = 0, time = 0;
+
+            stack[top++] = root;
+            tin[root] = time;
+            euler[time++] = root;
+            while(top > 0){
+                int v = stack[top - 1];
+                List<Node> children = nodes[v].children;
+                if(nextChild[v] < children.size()){
+                    Node child = children.get(nextChild[v]++);
+                    tin[child.id] = time;
+                    euler[time++] = child.id;
+                    stack[top++] = child.id;
+                } else {
+                    tout[v] = time - 1;
+                    top--;
                 }
             }
-            return node;
+            if(time != n) throw new IllegalArgumentException("Parent array is not a single tree: " + (n - time) + " nodes unreachable from the root");
         }
 
         /*
          * SECOND OPTIMIZATION - Time Complexity Analysis:
-         * 
-         * Binary Lifting Benefits:
-         * - Ancestor operations: O(h) → O(log h)
-         * - Memory: O(n log h) for ancestor table
-         * - Preprocessing: O(n log h) one-time cost
+         *
+         * Lock state lives in two Fenwick trees over the Euler tour instead of per-ancestor
+         * counters: the locked-ancestor check, the locked-descendant count and the update on
+         * lock/unlock are each O(log n), however deep the tree.
          */
 
+        // O(length of name) - Handle for name, or -1 if there is no such node. Callers that
+        // repeat operations on the same nodes resolve once and use the int overloads, which
+        // neither hash nor allocate on the lock and unlock paths.
+        public int resolve(String name){
+            return nameIndex.indexOf(name);
+        }
+
         public boolean lock(String name, int userId){
-            // O(1) - HashMap lookup
-            Node node = nodeMap.get(name);
+            return lock(resolve(name), userId);
+        }
+
+        public boolean lock(int handle, int userId){
+            // O(1) - Check if node exists (resolve gives -1 for an unknown name)
+            if(handle < 0) return false;
+
+            // O(1) - Direct array access, no hashing
+            Node node = nodes[handle];
             
             // O(1) - Check if node is locked
             if(node.isLocked) return false;
             
-            // O(log h) - Check for locked ancestor using binary lifting
+            // O(log n) - Check for locked ancestor
             if(hasLockedAncestorOptimized(node)) return false;
             
-            // O(1) - Check if any descendants are locked
-            if(!node.lockedDescendants.isEmpty()) return false;
+            // O(log n) - Check if any descendants are locked
+            if(lockedDescendantCount(node) > 0) return false;
 
             // O(1) - Lock the node
             node.isLocked = true;
             node.lockedBy = userId;
             
-            // O(log h) - Update all ancestors' locked descendants sets
-            updateAncestorsLockedDescendants(node, node, true);
+            // O(log n) - Record the lock for ancestor and descendant queries
+            updateAncestorsLockedDescendants(node, true);
             
             return true;
         }
 
         public boolean unlock(String name, int userId){
-            // O(1) - HashMap lookup
-            Node node = nodeMap.get(name);
+            return unlock(resolve(name), userId);
+        }
+
+        public boolean unlock(int handle, int userId){
+            // O(1) - Check if node exists (resolve gives -1 for an unknown name)
+            if(handle < 0) return false;
+
+            // O(1) - Direct array access, no hashing
+            Node node = nodes[handle];
             
             // O(1) - Check ownership and lock status
             if(!node.isLocked || node.lockedBy != userId) return false;
@@ -147,136 +276,148 @@ public class TestClass {
             node.isLocked = false;
             node.lockedBy = -1;
             
-            // O(log h) - Remove from all ancestors' locked descendants sets
-            updateAncestorsLockedDescendants(node, node, false);
+            // O(log n) - Remove the lock from ancestor and descendant queries
+            updateAncestorsLockedDescendants(node, false);
             
             return true;
         }
 
         public boolean upgrade(String name, int userId){
-            // O(1) - HashMap lookup
-            Node node = nodeMap.get(name);
-            
+            return upgrade(resolve(name), userId);
+        }
+
+        public boolean upgrade(int handle, int userId){
             // O(1) - Check if node exists and is not locked
-            if(node == null || node.isLocked) return false;
+            if(handle < 0 || nodes[handle].isLocked) return false;
+            Node node = nodes[handle];
             
-            // O(log h) - Check for locked ancestor using binary lifting
+            // O(log n) - Check for locked ancestor
             if(hasLockedAncestorOptimized(node)) return false;
 
-            // O(1) - Check if there are any locked descendants
-            if(node.lockedDescendants.isEmpty()) return false;
+            // O(log n) - Check if there are any locked descendants
+            if(lockedDescendantCount(node) == 0) return false;
             
-            // O(n_subtree) - Verify all locked descendants belong to user
-            if(!collectingLockedDescendantByUidOptimized(node, userId)) return false;
+            // O(n_subtree / p) - Verify all locked descendants belong to user
+            IntList lockedInSubtree = collectingLockedDescendantByUidOptimized(node, userId);
+            if(lockedInSubtree == null) return false;
 
-            // O(k log h) - Unlock all locked descendants and update ancestors
-            for(Node lockedDesc : node.lockedDescendants) {
+            // O(k log n) - Unlock all locked descendants
+            for(int i = 0; i < lockedInSubtree.size(); i++) {
+                Node lockedDesc = nodes[lockedInSubtree.get(i)];
                 // O(1) - Unlock descendant
                 lockedDesc.isLocked = false;
                 lockedDesc.lockedBy = -1;
                 
-                // O(log h) - Remove from all ancestors' sets
-                updateAncestorsLockedDescendants(lockedDesc, lockedDesc, false);
+                // O(log n) - Remove its lock from the queries
+                updateAncestorsLockedDescendants(lockedDesc, false);
             }
-            
-            // Clear the locked descendants set
-            node.lockedDescendants.clear();
 
             // O(1) - Lock the current node
             node.isLocked = true;
             node.lockedBy = userId;
             
-            // O(log h) - Add to all ancestors' locked descendants sets
-            updateAncestorsLockedDescendants(node, node, true);
+            // O(log n) - Record the lock for ancestor and descendant queries
+            updateAncestorsLockedDescendants(node, true);
             
             return true;
         }
 
-        // O(log h) - Check for locked ancestor using binary lifting
+        // O(log n) - Locked nodes whose Euler range covers tin[node] are node itself (if locked)
+        // and its locked ancestors. Every ancestor is counted, not just those 2^j levels up.
         private boolean hasLockedAncestorOptimized(Node node) {
-            int nodeIndex = nodeNames.indexOf(node.name);
-            int currentDepth = node.depth;
-            
-            // Try to find locked ancestor at each power of 2
-            for(int j = 0; j <= maxLog && currentDepth > 0; j++) {
-                Node ancestor = this.ancestor[nodeIndex][j];
-                if(ancestor != null && ancestor.isLocked) {
-                    return true;
-                }
-                // Move up 2^j levels
-                currentDepth -= (1 << j);
-                if(currentDepth > 0) {
-                    nodeIndex = nodeNames.indexOf(ancestor.name);
-                }
-            }
-            return false;
+            int covering = 0;
+            for(int i = tin[node.id] + 1; i > 0; i -= i & -i) covering += coverTree[i];
+            return covering - (node.isLocked ? 1 : 0) > 0;
         }
 
-        // O(log h) - Update all ancestors' locked descendants sets using binary lifting
-        private void updateAncestorsLockedDescendants(Node node, Node lockedNode, boolean isAdded) {
-            int nodeIndex = nodeNames.indexOf(node.name);
-            int currentDepth = node.depth;
-            
-            // Update ancestors at each level using binary lifting
-            for(int j = 0; j <= maxLog && currentDepth > 0; j++) {
-                Node ancestor = this.ancestor[nodeIndex][j];
-                if(ancestor != null) {
-                    if(isAdded) {
-                        ancestor.lockedDescendants.add(lockedNode);
-                    } else {
-                        ancestor.lockedDescendants.remove(lockedNode);
-                    }
-                    // Move up 2^j levels
-                    currentDepth -= (1 << j);
-                    if(currentDepth > 0) {
-                        nodeIndex = nodeNames.indexOf(ancestor.name);
-                    }
-                }
-            }
+        // O(log n) - Locked nodes strictly inside node's Euler range
+        private int lockedDescendantCount(Node node) {
+            return lockedPrefix(tout[node.id] + 1) - lockedPrefix(tin[node.id] + 1);
         }
 
-        // O(n_subtree) - Collect locked descendants by user ID (DFS)
-        private boolean collectingLockedDescendantByUidOptimized(Node node, int userId) {
-            // Check current node
-            if(node.isLocked && node.lockedBy != userId) {
-                return false;
-            }
-            
-            // Check all children recursively
-            for(Node child : node.children) {
-                if(!collectingLockedDescendantByUidOptimized(child, userId)) {
-                    return false;
-                }
+        private int lockedPrefix(int i) {
+            int sum = 0;
+            for(; i > 0; i -= i & -i) sum += lockedTree[i];
+            return sum;
+        }
+
+        // O(log n) - Record node being locked (isAdded) or unlocked in both Fenwick trees
+        private void updateAncestorsLockedDescendants(Node node, boolean isAdded) {
+            int delta = isAdded ? 1 : -1;
+            int n = nodes.length;
+            for(int i = tin[node.id] + 1; i <= n; i += i & -i) {
+                coverTree[i] += delta;
+                lockedTree[i] += delta;
             }
-            return true;
+            for(int i = tout[node.id] + 2; i <= n; i += i & -i) coverTree[i] -= delta;
         }
 
-        // Legacy methods for comparison (O(h) complexity)
-        private boolean hasLockedAncestor(Node node){
-            Node current = node.parent;
-            while(current != null){
-                if(current.isLocked) return true;
-                current = current.parent;
+        // O(n_subtree / p) - Collect the locked descendants, or null as soon as one belongs to
+        // another user. The subtree is one contiguous run of the Euler tour, so it is scanned
+        // as a flat range: sequentially when small, otherwise split across the ForkJoinPool.
+        private IntList collectingLockedDescendantByUidOptimized(Node node, int userId) {
+            int from = tin[node.id], to = tout[node.id] + 1;
+            int size = to - from;
+            if(size < PARALLEL_SCAN_THRESHOLD) {
+                IntList locked = new IntList();
+                return scanRange(from, to, userId, locked, null) ? locked : null;
             }
-            return false;
+
+            // Adaptive split: a few slices per worker, never smaller than MIN_SCAN_SLICE
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            int slice = Math.max(MIN_SCAN_SLICE, size / (parallelism * 4));
+            SubtreeScan scan = new SubtreeScan(from, to, userId, slice, new AtomicBoolean());
+            return ForkJoinPool.commonPool().invoke(scan);
         }
 
-        private boolean hasLockedDescendant(Node node){
-            for(Node child : node.children){
-                if(child.isLocked || hasLockedDescendant(child)) return true;
+        // Appends locked nodes in euler[from, to) to `locked`. Returns false on a lock owned by
+        // someone else, after raising `cancelled` so sibling tasks stop early.
+        private boolean scanRange(int from, int to, int userId, IntList locked, AtomicBoolean cancelled) {
+            for(int t = from; t < to; t++) {
+                // Poll the shared flag only every 1024 nodes
+                if(cancelled != null && (t & 1023) == 0 && cancelled.get()) return false;
+                Node n = nodes[euler[t]];
+                if(n.isLocked) {
+                    if(n.lockedBy != userId) {
+                        if(cancelled != null) cancelled.set(true);
+                        return false;
+                    }
+                    locked.add(n.id);
+                }
             }
-            return false;
+            return true;
         }
 
-        private boolean collectingLockedDescendantByUid(Node node, int userId, List<Node> list){
-            for(Node child : node.children){
-                if(!collectingLockedDescendantByUid(child, userId, list)) return false;
+        private class SubtreeScan extends RecursiveTask<IntList> {
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to, userId, slice;
+            private final AtomicBoolean cancelled; // shared by every task of one upgrade
+
+            SubtreeScan(int from, int to, int userId, int slice, AtomicBoolean cancelled) {
+                this.from = from;
+                this.to = to;
+                this.userId = userId;
+                this.slice = slice;
+                this.cancelled = cancelled;
             }
-            if(node.isLocked){
-                if(node.lockedBy != userId) return false;
-                list.add(node);
+
+            @Override
+            protected IntList compute() {
+                if(cancelled.get()) return null;
+                if(to - from <= slice) {
+                    IntList locked = new IntList();
+                    return scanRange(from, to, userId, locked, cancelled) ? locked : null;
+                }
+                int mid = (from + to) >>> 1;
+                SubtreeScan right = new SubtreeScan(mid, to, userId, slice, cancelled);
+                right.fork();
+                IntList left = new SubtreeScan(from, mid, userId, slice, cancelled).compute();
+                IntList rest = right.join();
+                if(left == null || rest == null) return null;
+                left.addAll(rest);
+                return left;
             }
-            return true;
         }
     }
 
@@ -293,7 +434,9 @@ public class TestClass {
             nodeNames.add(br.readLine().trim());
         }
 
-        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(nodeNames, m);
+        TreeOfSpaceMySolution tree = n >= PARALLEL_BUILD_THRESHOLD
+            ? TreeOfSpaceMySolution.buildParallel(nodeNames, m)
+            : new TreeOfSpaceMySolution(nodeNames, m);
 
         for(int i = 0; i < q; i++){
             String[] parts = br.readLine().trim().split("\\s+");
@@ -0,0 +1,316 @@
+package summitted_code.optimizing_solutions.cacheFriendlyLayout;
+
+import java.io.*;
+import java.util.*;
+
+public class TestClass {
+    // How node state is ordered in the per-node arrays
+    public enum Layout {
+        INPUT, // positions follow the input order
+        BFS,   // level by level: the top of the tree is packed into the first few cache lines
+        VEB    // van Emde Boas: recursive top/bottom split, so any root → leaf path touches
+               // O(log_B n) cache lines for every line size B at once
+    }
+
+    public static class TreeOfSpaceMySolution{
+
+        /*
+         * CACHE-FRIENDLY LAYOUT - Design:
+         *
+         * All per-node state lives in primitive arrays indexed by a layout position instead of
+         * in Node objects scattered over the heap. Ancestor walks (hasLockedAncestor and the
+         * counter updates) read parent[], lockedBy[] and lockedDescendantCount[] only, so
+         * the cost of a walk is the number of distinct cache lines on the root → node path.
+         * Renumbering the positions in BFS or van Emde Boas order keeps those paths dense.
+         *
+         * Time Complexity:
+         * - lock / unlock: O(h), with far fewer cache misses per level than pointer chasing
+         * - upgrade: O(k·h + nodes on paths to the k locked descendants)
+         */
+
+        private final Map<String, Integer> position = new HashMap<>(); // name → layout position
+        private final String[] names;     // names[pos]
+        private final int[] parent;       // parent[pos] = parent position, -1 for the root
+        private final int[] lockedBy;     // -1 when free
+        private final int[] lockedDescendantCount;
+        private final int[] childStart;   // children of pos are childList[childStart[pos] .. childStart[pos + 1])
+        private final int[] childList;
+
+        // Complete m-ary layout, as in summitted_code.TestClass
+        public TreeOfSpaceMySolution(List<String> nodeNames, int m, Layout layout){
+            this(nodeNames, mAryParents(nodeNames.size(), m), layout);
+        }
+
+        // parent[i] is the input index of node i's parent, -1 for the root
+        public TreeOfSpaceMySolution(List<String> nodeNames, int[] inputParent, Layout layout){
+            int n = nodeNames.size();
+            int[][] inputChildren = childrenOf(inputParent);
+            int root = -1;
+            for(int i = 0; i < n; i++) if(inputParent[i] < 0) root = i;
+
+            // order[pos] = input index placed at pos
+            int[] order;
+            switch(layout){
+                case BFS: order = bfsOrder(root, inputChildren); break;
+                case VEB: order = vebOrder(root, inputChildren, inputParent); break;
+                default:
+                    order = new int[n];
+                    for(int i = 0; i < n; i++) order[i] = i;
+            }
+            int[] posOf = new int[n];
+            for(int pos = 0; pos < n; pos++) posOf[order[pos]] = pos;
+
+            names = new String[n];
+            parent = new int[n];
+            lockedBy = new int[n];
+            lockedDescendantCount = new int[n];
+            childStart = new int[n + 1];
+            childList = new int[Math.max(n - 1, 0)];
+            Arrays.fill(lockedBy, -1);
+            for(int pos = 0, c = 0; pos < n; pos++){
+                int i = order[pos];
+                names[pos] = nodeNames.get(i);
+                position.put(names[pos], pos);
+                parent[pos] = inputParent[i] < 0 ? -1 : posOf[inputParent[i]];
+                childStart[pos] = c;
+                for(int child : inputChildren[i]) childList[c++] = posOf[child];
+            }
+            childStart[n] = childList.length;
+        }
+
+        public boolean lock(String name, int userId){
+            int node = position.get(name);
+            if(lockedBy[node] != -1 || lockedDescendantCount[node] > 0 || hasLockedAncestor(node)) return false;
+
+            lockedBy[node] = userId;
+            addToAncestors(node, 1);
+            return true;
+        }
+
+        public boolean unlock(String name, int userId){
+            int node = position.get(name);
+            if(lockedBy[node] == -1 || lockedBy[node] != userId) return false;
+
+            lockedBy[node] = -1;
+            addToAncestors(node, -1);
+            return true;
+        }
+
+        public boolean upgrade(String name, int userId){
+            int node = position.get(name);
+            if(lockedBy[node] != -1 || lockedDescendantCount[node] == 0 || hasLockedAncestor(node)) return false;
+
+            // Pruned DFS: only enter children whose subtree holds a lock
+            int[] locked = new int[lockedDescendantCount[node]];
+            int k = 0;
+            int[] stack = new int[16];
+            int top = 0;
+            for(int c = childStart[node]; c < childStart[node + 1]; c++){
+                if(top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = childList[c];
+            }
+            while(top > 0){
+                int v = stack[--top];
+                if(lockedBy[v] != -1){
+                    if(lockedBy[v] != userId) return false;
+                    locked[k++] = v;
+                    continue;
+                }
+                if(lockedDescendantCount[v] == 0) continue;
+                for(int c = childStart[v]; c < childStart[v + 1]; c++){
+                    if(top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = childList[c];
+                }
+            }
+
+            for(int i = 0; i < k; i++){
+                lockedBy[locked[i]] = -1;
+                addToAncestors(locked[i], -1);
+            }
+            lockedBy[node] = userId;
+            addToAncestors(node, 1);
+            return true;
+        }
+
+        // O(h) - one parent[] and one lockedBy[] read per level
+        boolean hasLockedAncestor(int node){
+            for(int cur = parent[node]; cur >= 0; cur = parent[cur]){
+                if(lockedBy[cur] != -1) return true;
+            }
+            return false;
+        }
+
+        private void addToAncestors(int node, int delta){
+            for(int cur = parent[node]; cur >= 0; cur = parent[cur]){
+                lockedDescendantCount[cur] += delta;
+            }
+        }
+
+        int positionOf(String name){
+            return position.get(name);
+        }
+
+        int size(){
+            return names.length;
+        }
+
+        // ===================== LAYOUTS =====================
+
+        private static int[] mAryParents(int n, int m){
+            int[] parent = new int[n];
+            parent[0] = -1;
+            for(int i = 1; i < n; i++) parent[i] = (i - 1) / m;
+            return parent;
+        }
+
+        private static int[][] childrenOf(int[] parent){
+            int n = parent.length;
+            int[] count = new int[n];
+            for(int p : parent) if(p >= 0) count[p]++;
+            int[][] children = new int[n][];
+            for(int i = 0; i < n; i++) children[i] = new int[count[i]];
+            Arrays.fill(count, 0);
+            for(int i = 0; i < n; i++){
+                int p = parent[i];
+                if(p >= 0) children[p][count[p]++] = i;
+            }
+            return children;
+        }
+
+        private static int[] bfsOrder(int root, int[][] children){
+            int[] order = new int[children.length];
+            int head = 0, tail = 0;
+            order[tail++] = root;
+            while(head < tail){
+                for(int child : children[order[head++]]) order[tail++] = child;
+            }
+            return order;
+        }
+
+        // van Emde Boas order for an arbitrary tree: lay out the top half of the levels
+        // recursively, then each subtree hanging below it, again recursively. Recursion depth
+        // is O(log h); the level-limited walks inside are iterative.
+        private static int[] vebOrder(int root, int[][] children, int[] parent){
+            int n = children.length;
+            int[] height = new int[n]; // levels in the subtree of i, 1 for a leaf
+            int[] bfs = bfsOrder(root, children);
+            for(int k = n - 1; k >= 0; k--){
+                int v = bfs[k];
+                height[v] = Math.max(height[v], 1);
+                if(parent[v] >= 0) height[parent[v]] = Math.max(height[parent[v]], height[v] + 1);
+            }
+            int[] order = new int[n];
+            int[] filled = new int[1];
+            vebLayout(root, height[root], children, order, filled, new int[n], new int[n]);
+            return order;
+        }
+
+        // Emits the first `levels` levels of the subtree at v
+        private static void vebLayout(int v, int levels, int[][] children, int[] order, int[] filled, int[] stack, int[] rel){
+            if(levels == 1){
+                order[filled[0]++] = v;
+                return;
+            }
+            int topLevels = (levels + 1) / 2;
+            vebLayout(v, topLevels, children, order, filled, stack, rel);
+
+            // Roots of the bottom subtrees: nodes exactly topLevels below v
+            List<Integer> bottoms = new ArrayList<>();
+            int top = 0;
+            stack[top] = v;
+            rel[top++] = 0;
+            while(top > 0){
+                int u = stack[--top];
+                int d = rel[top];
+                if(d == topLevels){
+                    bottoms.add(u);
+                    continue;
+                }
+                int[] kids = children[u];
+                for(int c = kids.length - 1; c >= 0; c--){
+                    stack[top] = kids[c];
+                    rel[top++] = d + 1;
+                }
+            }
+            for(int b : bottoms){
+                vebLayout(b, levels - topLevels, children, order, filled, stack, rel);
+            }
+        }
+    }
+
+    // Ancestor-walk benchmark: the same deep tree, its node ids shuffled (so the input order
+    // is as scattered as objects on a fragmented heap), walked from random leaves under each
+    // layout. For hardware counters run it under `perf stat -e cache-misses,cache-references`.
+    static void benchmark(int n, int m, int walks){
+        Random random = new Random(42);
+        int[] shuffle = new int[n]; // shuffle[i] = input index of m-ary node i
+        for(int i = 0; i < n; i++) shuffle[i] = i;
+        for(int i = n - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int t = shuffle[i]; shuffle[i] = shuffle[j]; shuffle[j] = t;
+        }
+        int[] inputParent = new int[n];
+        List<String> names = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) names.add(null);
+        for(int i = 0; i < n; i++){
+            inputParent[shuffle[i]] = i == 0 ? -1 : shuffle[(i - 1) / m];
+            names.set(shuffle[i], "N" + i);
+        }
+        String[] leaves = new String[walks];
+        for(int w = 0; w < walks; w++) leaves[w] = "N" + (n - 1 - random.nextInt(Math.max(n / m, 1)));
+
+        for(Layout layout : Layout.values()){
+            TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, inputParent, layout);
+            int[] start = new int[walks];
+            for(int w = 0; w < walks; w++) start[w] = tree.positionOf(leaves[w]);
+            long best = Long.MAX_VALUE;
+            for(int round = 0; round < 5; round++){
+                long t0 = System.nanoTime();
+                int hits = 0;
+                for(int w = 0; w < walks; w++) if(tree.hasLockedAncestor(start[w])) hits++;
+                best = Math.min(best, System.nanoTime() - t0);
+                if(hits != 0) throw new IllegalStateException();
+            }
+            System.out.printf("%-5s %8.1f ns per root walk%n", layout, (double) best / walks);
+        }
+    }
+
+    public static void main(String args[] ) throws Exception {
+        if(args.length > 0 && args[0].equals("bench")){
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 22;
+            int m = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+            benchmark(n, m, 1 << 20);
+            return;
+        }
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+        int n = Integer.parseInt(br.readLine());
+        int m = Integer.parseInt(br.readLine());
+        int q = Integer.parseInt(br.readLine());
+
+        List<String> nodeNames = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            nodeNames.add(br.readLine().trim());
+        }
+
+        // The m-ary input is already in BFS order; vEB also keeps deep paths compact
+        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(nodeNames, m, Layout.VEB);
+
+        for(int i = 0; i < q; i++){
+            String[] parts = br.readLine().trim().split("\\s+");
+            int type = Integer.parseInt(parts[0]);
+            String name = parts[1];
+            int userId = Integer.parseInt(parts[2]);
+
+            boolean result = switch(type){
+                case 1 -> tree.lock(name, userId);
+                case 2 -> tree.unlock(name, userId);
+                case 3 -> tree.upgrade(name, userId);
+                default -> false;
+            };
+
+            System.out.println(result);
+        }
+    }
+}
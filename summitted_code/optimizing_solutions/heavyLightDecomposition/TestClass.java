@@ -0,0 +1,267 @@
+package summitted_code.optimizing_solutions.heavyLightDecomposition;
+
+import java.io.*;
+import java.util.*;
+
+public class TestClass {
+    public static class TreeOfSpaceMySolution{
+
+        /*
+         * HEAVY-LIGHT DECOMPOSITION - Design:
+         *
+         * Every node's heaviest child (largest subtree) continues its chain, every other child
+         * starts a new one. Any root → node path crosses at most O(log n) light edges, so it is
+         * the concatenation of O(log n) chain prefixes. Each chain has two Fenwick trees:
+         *
+         * - countTree: "add delta to a chain prefix" / "read one node's counter", holding
+         *   lockedDescendantCount (the number of locked nodes strictly below a node)
+         * - lockTree: "set one node's locked flag" / "sum of a chain prefix", answering
+         *   whether any ancestor is locked
+         *
+         * All chains share the two backing arrays; chain c occupies the slots
+         * [pos[head], pos[head] + chainLength), so there is no per-chain allocation.
+         *
+         * Time Complexity (independent of the tree's height):
+         * - lock(name, userId): O(log² n)
+         * - unlock(name, userId): O(log² n)
+         * - upgrade(name, userId): O((k + nodes on paths to the k locked descendants) · log² n)
+         */
+
+        private final Map<String, Integer> index = new HashMap<>(); // name → input index
+        private final int[] parent;
+        private final int[] lockedBy;
+        private final int[][] children;
+
+        private final int[] head;        // top node of v's chain
+        private final int[] pos;         // slot of v in the shared arrays; chains are contiguous
+        private final int[] chainLength; // valid for chain heads
+        private final int[] countTree;   // per-chain Fenwick, prefix add / point query
+        private final int[] lockTree;    // per-chain Fenwick, point add / prefix sum
+
+        public TreeOfSpaceMySolution(List<String> nodeNames, int m){
+            this(nodeNames, mAryParents(nodeNames.size(), m));
+        }
+
+        // parent[i] is the input index of node i's parent, -1 for the root
+        public TreeOfSpaceMySolution(List<String> nodeNames, int[] parent){
+            int n = nodeNames.size();
+            this.parent = parent;
+            lockedBy = new int[n];
+            Arrays.fill(lockedBy, -1);
+            for(int i = 0; i < n; i++) index.put(nodeNames.get(i), i);
+
+            int root = -1;
+            int[] count = new int[n];
+            for(int i = 0; i < n; i++){
+                if(parent[i] < 0) root = i;
+                else count[parent[i]]++;
+            }
+            children = new int[n][];
+            for(int i = 0; i < n; i++) children[i] = new int[count[i]];
+            Arrays.fill(count, 0);
+            for(int i = 0; i < n; i++){
+                if(parent[i] >= 0) children[parent[i]][count[parent[i]]++] = i;
+            }
+
+            // Subtree sizes bottom-up over a BFS order, then the heavy child of each node
+            int[] order = new int[n];
+            int tail = 0;
+            order[tail++] = root;
+            for(int h = 0; h < tail; h++){
+                for(int child : children[order[h]]) order[tail++] = child;
+            }
+            int[] size = new int[n];
+            int[] heavy = new int[n];
+            Arrays.fill(heavy, -1);
+            for(int k = n - 1; k >= 0; k--){
+                int v = order[k];
+                size[v]++;
+                for(int child : children[v]){
+                    if(heavy[v] < 0 || size[child] > size[heavy[v]]) heavy[v] = child;
+                }
+                if(parent[v] >= 0) size[parent[v]] += size[v];
+            }
+
+            // Walk each chain down its heavy edges; light children start chains of their own
+            head = new int[n];
+            pos = new int[n];
+            chainLength = new int[n];
+            int[] stack = new int[n];
+            int top = 0, next = 0;
+            stack[top++] = root;
+            while(top > 0){
+                int h = stack[--top];
+                for(int v = h; v >= 0; v = heavy[v]){
+                    head[v] = h;
+                    pos[v] = next++;
+                    chainLength[h]++;
+                    for(int child : children[v]){
+                        if(child != heavy[v]) stack[top++] = child;
+                    }
+                }
+            }
+            countTree = new int[n];
+            lockTree = new int[n];
+        }
+
+        public boolean lock(String name, int userId){
+            int node = index.get(name);
+            if(lockedBy[node] != -1 || lockedDescendantCount(node) > 0 || hasLockedAncestor(node)) return false;
+
+            setLocked(node, userId);
+            return true;
+        }
+
+        public boolean unlock(String name, int userId){
+            int node = index.get(name);
+            if(lockedBy[node] == -1 || lockedBy[node] != userId) return false;
+
+            clearLocked(node);
+            return true;
+        }
+
+        public boolean upgrade(String name, int userId){
+            int node = index.get(name);
+            if(lockedBy[node] != -1 || lockedDescendantCount(node) == 0 || hasLockedAncestor(node)) return false;
+
+            // Pruned DFS: only enter children whose subtree holds a lock
+            List<Integer> locked = new ArrayList<>();
+            Deque<Integer> stack = new ArrayDeque<>();
+            for(int child : children[node]) stack.push(child);
+            while(!stack.isEmpty()){
+                int v = stack.pop();
+                if(lockedBy[v] != -1){
+                    if(lockedBy[v] != userId) return false;
+                    locked.add(v);
+                    continue;
+                }
+                if(lockedDescendantCount(v) == 0) continue;
+                for(int child : children[v]) stack.push(child);
+            }
+
+            for(int v : locked) clearLocked(v);
+            setLocked(node, userId);
+            return true;
+        }
+
+        private void setLocked(int node, int userId){
+            lockedBy[node] = userId;
+            addLockFlag(node, 1);
+            addToAncestors(node, 1);
+        }
+
+        private void clearLocked(int node){
+            lockedBy[node] = -1;
+            addLockFlag(node, -1);
+            addToAncestors(node, -1);
+        }
+
+        // O(log² n) - one chain prefix sum per light edge on the path
+        boolean hasLockedAncestor(int node){
+            for(int v = parent[node]; v >= 0; v = parent[head[v]]){
+                int h = head[v];
+                if(prefixSum(lockTree, pos[h], pos[v] - pos[h] + 1) > 0) return true;
+            }
+            return false;
+        }
+
+        // O(log² n) - the root → parent(node) path is O(log n) chain prefixes
+        private void addToAncestors(int node, int delta){
+            for(int v = parent[node]; v >= 0; v = parent[head[v]]){
+                int h = head[v];
+                int i = pos[v] - pos[h] + 1;
+                for(; i > 0; i -= i & -i) countTree[pos[h] + i - 1] += delta;
+            }
+        }
+
+        // O(log n) - a point query in node's chain
+        int lockedDescendantCount(int node){
+            int h = head[node];
+            int len = chainLength[h];
+            int sum = 0;
+            for(int i = pos[node] - pos[h] + 1; i <= len; i += i & -i) sum += countTree[pos[h] + i - 1];
+            return sum;
+        }
+
+        private void addLockFlag(int node, int delta){
+            int h = head[node];
+            int len = chainLength[h];
+            for(int i = pos[node] - pos[h] + 1; i <= len; i += i & -i) lockTree[pos[h] + i - 1] += delta;
+        }
+
+        private static int prefixSum(int[] tree, int base, int i){
+            int sum = 0;
+            for(; i > 0; i -= i & -i) sum += tree[base + i - 1];
+            return sum;
+        }
+
+        private static int[] mAryParents(int n, int m){
+            int[] parent = new int[n];
+            parent[0] = -1;
+            for(int i = 1; i < n; i++) parent[i] = (i - 1) / m;
+            return parent;
+        }
+    }
+
+    // Lock/unlock at the bottom of a degenerate tree: a path of n nodes with a short side
+    // branch on every node, so per-ancestor walks cost O(n) while chains stay O(log n)
+    static void benchmark(int n, int ops){
+        int[] parent = new int[2 * n];
+        List<String> names = new ArrayList<>(2 * n);
+        for(int i = 0; i < n; i++){
+            parent[i] = i - 1;
+            parent[n + i] = i;
+            names.add("P" + i);
+        }
+        for(int i = 0; i < n; i++) names.add("L" + i);
+        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, parent);
+
+        Random random = new Random(42);
+        long t0 = System.nanoTime();
+        int granted = 0;
+        for(int k = 0; k < ops; k++){
+            String leaf = "L" + (n - 1 - random.nextInt(16));
+            if(tree.lock(leaf, 1)) granted++;
+            tree.unlock(leaf, 1);
+        }
+        long elapsed = System.nanoTime() - t0;
+        System.out.printf("depth %d: %.1f ns per lock+unlock (%d granted)%n", n, (double) elapsed / ops, granted);
+    }
+
+    public static void main(String args[] ) throws Exception {
+        if(args.length > 0 && args[0].equals("bench")){
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 20;
+            benchmark(n, 1 << 20);
+            return;
+        }
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+        int n = Integer.parseInt(br.readLine());
+        int m = Integer.parseInt(br.readLine());
+        int q = Integer.parseInt(br.readLine());
+
+        List<String> nodeNames = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            nodeNames.add(br.readLine().trim());
+        }
+
+        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(nodeNames, m);
+
+        for(int i = 0; i < q; i++){
+            String[] parts = br.readLine().trim().split("\\s+");
+            int type = Integer.parseInt(parts[0]);
+            String name = parts[1];
+            int userId = Integer.parseInt(parts[2]);
+
+            boolean result = switch(type){
+                case 1 -> tree.lock(name, userId);
+                case 2 -> tree.unlock(name, userId);
+                case 3 -> tree.upgrade(name, userId);
+                default -> false;
+            };
+
+            System.out.println(result);
+        }
+    }
+}
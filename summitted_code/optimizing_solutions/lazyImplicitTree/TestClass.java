@@ -0,0 +1,321 @@
+package summitted_code.optimizing_solutions.lazyImplicitTree;
+
+import java.io.*;
+import java.util.*;
+
+public class TestClass {
+    public static class TreeOfSpaceMySolution{
+
+        /*
+         * LAZY IMPLICIT M-ARY TREE - Design:
+         *
+         * In the stdin layout node i's parent is (i - 1) / m and its children are
+         * m*i + 1 .. m*i + m, so the shape needs no storage at all. The only state is:
+         *
+         * - lockedBy: uid of each locked node
+         * - lockedBelow: number of locked nodes strictly below, for ancestors of locked nodes
+         *
+         * Both live in sparse open-addressing int → int maps that hold an entry only while it
+         * is non-default, so memory follows the number of locks times the depth, not n.
+         * Construction stores the name list and nothing else. The name → index table (one
+         * int per slot, keyed by the names' cached hash codes) is built on the first call by
+         * name; callers that already know indices use the int overloads and never pay for it.
+         *
+         * Time Complexity (h = log_m n):
+         * - construction: O(1)
+         * - lock(index, userId): O(h) expected
+         * - unlock(index, userId): O(h) expected
+         * - upgrade(index, userId): O(h + m · nodes on paths to the k locked descendants + k·h)
+         * - first call by name: O(n) to build the name table
+         */
+
+        private final List<String> nodeNames;
+        private final int n;
+        private final int m;
+        private final IntIntMap lockedBy = new IntIntMap();
+        private final IntIntMap lockedBelow = new IntIntMap();
+        private int[] nameTable; // index + 1 per slot, 0 empty; null until the first call by name
+
+        // Scratch for upgrade
+        private int[] stack = new int[64];
+        private int[] found = new int[64];
+
+        public TreeOfSpaceMySolution(List<String> nodeNames, int m){
+            this.nodeNames = nodeNames;
+            this.n = nodeNames.size();
+            this.m = m;
+        }
+
+        // Index of the node with this name, or -1
+        public int resolve(String name){
+            if(nameTable == null) buildNameTable();
+            int mask = nameTable.length - 1;
+            for(int s = spread(name.hashCode()) & mask; nameTable[s] != 0; s = (s + 1) & mask){
+                int i = nameTable[s] - 1;
+                if(nodeNames.get(i).equals(name)) return i;
+            }
+            return -1;
+        }
+
+        private void buildNameTable(){
+            int capacity = 16;
+            while(capacity < 2L * n) capacity *= 2;
+            int[] table = new int[capacity];
+            int mask = capacity - 1;
+            for(int i = 0; i < n; i++){
+                int s = spread(nodeNames.get(i).hashCode()) & mask;
+                while(table[s] != 0) s = (s + 1) & mask;
+                table[s] = i + 1;
+            }
+            nameTable = table;
+        }
+
+        private static int spread(int h){
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        public boolean lock(String name, int userId){
+            return lock(resolve(name), userId);
+        }
+
+        public boolean unlock(String name, int userId){
+            return unlock(resolve(name), userId);
+        }
+
+        public boolean upgrade(String name, int userId){
+            return upgrade(resolve(name), userId);
+        }
+
+        public boolean lock(int node, int userId){
+            if(node < 0 || node >= n) return false;
+            if(lockedBy.containsKey(node) || lockedBelow.get(node) > 0 || hasLockedAncestor(node)) return false;
+
+            lockedBy.put(node, userId);
+            addToAncestors(node, 1);
+            return true;
+        }
+
+        public boolean unlock(int node, int userId){
+            if(node < 0 || node >= n) return false;
+            if(!lockedBy.containsKey(node) || lockedBy.get(node) != userId) return false;
+
+            lockedBy.remove(node);
+            addToAncestors(node, -1);
+            return true;
+        }
+
+        public boolean upgrade(int node, int userId){
+            if(node < 0 || node >= n) return false;
+            if(lockedBy.containsKey(node) || lockedBelow.get(node) == 0 || hasLockedAncestor(node)) return false;
+
+            // Pruned DFS: children are computed, and only those with a lock at or below are entered
+            int sp = pushChildren(0, node), count = 0;
+            while(sp > 0){
+                int v = stack[--sp];
+                if(lockedBy.containsKey(v)){
+                    if(lockedBy.get(v) != userId) return false;
+                    if(count == found.length) found = Arrays.copyOf(found, count * 2);
+                    found[count++] = v;
+                    continue;
+                }
+                sp = pushChildren(sp, v);
+            }
+
+            for(int k = 0; k < count; k++){
+                lockedBy.remove(found[k]);
+                addToAncestors(found[k], -1);
+            }
+            lockedBy.put(node, userId);
+            addToAncestors(node, 1);
+            return true;
+        }
+
+        private int pushChildren(int sp, int v){
+            long first = (long) m * v + 1;
+            long last = Math.min(first + m, n);
+            for(long c = first; c < last; c++){
+                int child = (int) c;
+                if(!lockedBy.containsKey(child) && lockedBelow.get(child) == 0) continue;
+                if(sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                stack[sp++] = child;
+            }
+            return sp;
+        }
+
+        private boolean hasLockedAncestor(int node){
+            for(int v = node; v > 0; ){
+                v = (v - 1) / m;
+                if(lockedBy.containsKey(v)) return true;
+            }
+            return false;
+        }
+
+        // Entries that drop to zero are removed, so the map only holds ancestors of live locks
+        private void addToAncestors(int node, int delta){
+            for(int v = node; v > 0; ){
+                v = (v - 1) / m;
+                int count = lockedBelow.get(v) + delta;
+                if(count == 0) lockedBelow.remove(v);
+                else lockedBelow.put(v, count);
+            }
+        }
+
+        // Nodes with any state, for measuring memory against n
+        public int materializedNodes(){
+            return lockedBy.size() + lockedBelow.size();
+        }
+    }
+
+    // Open addressing with linear probing and backward-shift deletion, so no tombstones pile
+    // up; shrinks when mostly empty so a burst of locks does not pin memory. Keys are >= 0.
+    static final class IntIntMap {
+        private int[] keys = new int[16]; // key + 1, 0 empty
+        private int[] values = new int[16];
+        private int size;
+
+        int size(){
+            return size;
+        }
+
+        private int home(int key){
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (keys.length - 1);
+        }
+
+        private int slot(int key){
+            int mask = keys.length - 1;
+            int s = home(key);
+            while(keys[s] != 0 && keys[s] != key + 1) s = (s + 1) & mask;
+            return s;
+        }
+
+        boolean containsKey(int key){
+            return keys[slot(key)] != 0;
+        }
+
+        // 0 when absent
+        int get(int key){
+            int s = slot(key);
+            return keys[s] == 0 ? 0 : values[s];
+        }
+
+        void put(int key, int value){
+            int s = slot(key);
+            if(keys[s] == 0){
+                if(2 * (size + 1) > keys.length){
+                    resize(keys.length * 2);
+                    s = slot(key);
+                }
+                keys[s] = key + 1;
+                size++;
+            }
+            values[s] = value;
+        }
+
+        void remove(int key){
+            int s = slot(key);
+            if(keys[s] == 0) return;
+            int mask = keys.length - 1;
+            // Pull later entries of the probe run back over the gap
+            for(int next = (s + 1) & mask; keys[next] != 0; next = (next + 1) & mask){
+                int home = home(keys[next] - 1);
+                if(((next - home) & mask) >= ((next - s) & mask)){
+                    keys[s] = keys[next];
+                    values[s] = values[next];
+                    s = next;
+                }
+            }
+            keys[s] = 0;
+            size--;
+            if(keys.length > 16 && 8 * size < keys.length) resize(keys.length / 2);
+        }
+
+        private void resize(int capacity){
+            int[] oldKeys = keys, oldValues = values;
+            keys = new int[capacity];
+            values = new int[capacity];
+            for(int i = 0; i < oldKeys.length; i++){
+                if(oldKeys[i] == 0) continue;
+                int s = slot(oldKeys[i] - 1);
+                keys[s] = oldKeys[i];
+                values[s] = oldValues[i];
+            }
+        }
+    }
+
+    private static long usedHeap(){
+        Runtime rt = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Startup and memory against the eager summitted_code engine on the same m-ary input
+    static void benchmark(int n, int m, int locks){
+        List<String> names = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) names.add("N" + i);
+
+        long base = usedHeap();
+        long t0 = System.nanoTime();
+        summitted_code.TestClass.TreeOfSpaceMySolution eager = new summitted_code.TestClass.TreeOfSpaceMySolution(names, m);
+        long eagerBuild = System.nanoTime() - t0;
+        long eagerBytes = usedHeap() - base;
+        eager = null;
+
+        base = usedHeap();
+        t0 = System.nanoTime();
+        TreeOfSpaceMySolution lazy = new TreeOfSpaceMySolution(names, m);
+        long lazyBuild = System.nanoTime() - t0;
+        Random random = new Random(1);
+        t0 = System.nanoTime();
+        for(int k = 0; k < locks; k++) lazy.lock(random.nextInt(n), 1);
+        long lockNs = System.nanoTime() - t0;
+        long lazyBytes = usedHeap() - base;
+
+        System.out.printf("n=%d m=%d%n", n, m);
+        System.out.printf("eager: build %.1f ms, %.1f MB%n", eagerBuild / 1e6, eagerBytes / 1e6);
+        System.out.printf("lazy:  build %.3f ms, %.1f MB after %d locks by index (%d nodes materialized, %.0f ns/lock)%n",
+            lazyBuild / 1e6, lazyBytes / 1e6, locks, lazy.materializedNodes(), (double) lockNs / locks);
+        t0 = System.nanoTime();
+        lazy.lock("N" + (n - 1), 2);
+        System.out.printf("first lock by name builds the name table: %.1f ms%n", (System.nanoTime() - t0) / 1e6);
+    }
+
+    public static void main(String args[] ) throws Exception {
+        if(args.length > 0 && args[0].equals("bench")){
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 22;
+            int m = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+            benchmark(n, m, 1000);
+            return;
+        }
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+        int n = Integer.parseInt(br.readLine());
+        int m = Integer.parseInt(br.readLine());
+        int q = Integer.parseInt(br.readLine());
+
+        List<String> nodeNames = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            nodeNames.add(br.readLine().trim());
+        }
+
+        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(nodeNames, m);
+
+        for(int i = 0; i < q; i++){
+            String[] parts = br.readLine().trim().split("\\s+");
+            int type = Integer.parseInt(parts[0]);
+            String name = parts[1];
+            int userId = Integer.parseInt(parts[2]);
+
+            boolean result = switch(type){
+                case 1 -> tree.lock(name, userId);
+                case 2 -> tree.unlock(name, userId);
+                case 3 -> tree.upgrade(name, userId);
+                default -> false;
+            };
+
+            System.out.println(result);
+        }
+    }
+}
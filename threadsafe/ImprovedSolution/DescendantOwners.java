@@ -0,0 +1,120 @@
+package threadsafe.ImprovedSolution;
+
+// Which uids own the exclusive locks below a node, with a count per uid. upgrade only asks
+// "do all of them belong to exactly this uid?", and in practice the answer involves one uid,
+// so that case is two int fields. A uid -> count table is allocated only while two or more
+// uids hold locks below the node, and dropped again once one uid is left. Any int is a valid
+// uid: the state is told apart by count and overflow, never by reserved uid values.
+class DescendantOwners {
+    private int owner;             // the single owning uid while count > 0 and overflow == null
+    private int count;             // locks held by `owner`; 0 when empty, unused while mixed
+    private IntIntHashMap overflow; // non-null exactly while two or more uids own locks below
+
+    boolean ownedSolelyBy(int uid){
+        return overflow == null && count > 0 && owner == uid;
+    }
+
+    void add(int uid){
+        if(overflow != null){
+            overflow.addTo(uid, 1);
+        } else if(count == 0){
+            owner = uid;
+            count = 1;
+        } else if(owner == uid){
+            count++;
+        } else {
+            overflow = new IntIntHashMap();
+            overflow.addTo(owner, count);
+            overflow.addTo(uid, 1);
+            count = 0;
+        }
+    }
+
+    void remove(int uid, int n){
+        if(overflow == null){
+            if(count > 0 && owner == uid) count = Math.max(0, count - n);
+        } else {
+            overflow.addTo(uid, -n);
+            if(overflow.size() == 1){
+                owner = overflow.anyKey();
+                count = overflow.get(owner);
+                overflow = null;
+            }
+        }
+    }
+}
+
+// Open-addressing map from int keys to int counts; entries that reach zero are removed.
+// Slot occupancy lives in its own array, so every int is a usable key.
+class IntIntHashMap {
+    private static final byte EMPTY = 0, FULL = 1, REMOVED = 2;
+
+    private int[] keys = new int[8];
+    private int[] values = new int[8];
+    private byte[] state = new byte[8];
+    private int size;
+    private int used;
+
+    int size(){
+        return size;
+    }
+
+    int get(int key){
+        int i = find(key);
+        return i < 0 ? 0 : values[i];
+    }
+
+    // Some key of a non-empty map
+    int anyKey(){
+        for(int i = 0; i < keys.length; i++) if(state[i] == FULL) return keys[i];
+        throw new IllegalStateException("empty map");
+    }
+
+    void addTo(int key, int delta){
+        int i = find(key);
+        if(i >= 0){
+            values[i] += delta;
+            if(values[i] <= 0){
+                state[i] = REMOVED;
+                size--;
+            }
+            return;
+        }
+        if(delta <= 0) return;
+        if((used + 1) * 4 > keys.length * 3) rehash((size + 1) * 8 > keys.length * 3 ? keys.length * 2 : keys.length);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while(state[slot] == FULL) slot = (slot + 1) & mask;
+        if(state[slot] == EMPTY) used++;
+        keys[slot] = key;
+        values[slot] = delta;
+        state[slot] = FULL;
+        size++;
+    }
+
+    private int find(int key){
+        int mask = keys.length - 1;
+        for(int i = mix(key) & mask; ; i = (i + 1) & mask){
+            if(state[i] == EMPTY) return -1;
+            if(state[i] == FULL && keys[i] == key) return i;
+        }
+    }
+
+    private void rehash(int cap){
+        int[] oldKeys = keys, oldValues = values;
+        byte[] oldState = state;
+        keys = new int[cap];
+        values = new int[cap];
+        state = new byte[cap];
+        size = 0;
+        used = 0;
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldState[i] == FULL) addTo(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int mix(int v){
+        int h = v * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,115 @@
+package threadsafe.ImprovedSolution;
+
+// Hierarchical timing wheel (Varghese & Lauck): LEVELS wheels of 64 slots each, level L
+// covering 64^(L+1) ticks. Scheduling and each tick are O(1); an entry is cascaded down at
+// most LEVELS - 1 times before it fires, however many leases are live.
+class HierarchicalTimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Lease[][] wheels = new Lease[LEVELS][SLOTS];
+    private long currentTick;
+
+    HierarchicalTimingWheel(long tickMillis){
+        this.tickMillis = tickMillis;
+        this.startMillis = now();
+    }
+
+    long now(){
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    synchronized void schedule(Lease lease){
+        // Round up so a lease never fires before its deadline
+        long tick = (lease.deadline - startMillis + tickMillis - 1) / tickMillis;
+        lease.expiryTick = Math.max(tick, currentTick + 1);
+        place(lease);
+    }
+
+    // Advances the clock to `nowMillis` and returns the chain of leases that fell due.
+    synchronized Lease advanceTo(long nowMillis){
+        long target = (nowMillis - startMillis) / tickMillis;
+        Lease expired = null;
+        while(currentTick < target) {
+            currentTick++;
+            cascade();
+            int slot = (int) (currentTick & MASK);
+            Lease due = wheels[0][slot];
+            wheels[0][slot] = null;
+            while(due != null) {
+                Lease next = due.next;
+                due.level = -1;
+                due.prev = null;
+                due.next = expired;
+                expired = due;
+                due = next;
+            }
+        }
+        return expired;
+    }
+
+    // Takes the lease off the wheel; false if it already fired or was never scheduled
+    synchronized boolean cancel(Lease lease){
+        if(lease.level < 0) return false;
+        if(lease.prev != null) lease.prev.next = lease.next;
+        else wheels[lease.level][lease.slot] = lease.next;
+        if(lease.next != null) lease.next.prev = lease.prev;
+        lease.level = -1;
+        lease.prev = lease.next = null;
+        return true;
+    }
+
+    synchronized void clear(){
+        for(Lease[] wheel : wheels) {
+            for(int slot = 0; slot < SLOTS; slot++) {
+                for(Lease l = wheel[slot]; l != null; ) {
+                    Lease next = l.next;
+                    l.level = -1;
+                    l.prev = l.next = null;
+                    l = next;
+                }
+                wheel[slot] = null;
+            }
+        }
+    }
+
+    private void place(Lease lease){
+        long delta = lease.expiryTick - currentTick;
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) level++;
+        int slot;
+        if(delta >= 1L << (BITS * LEVELS)) {
+            // Beyond the wheel's horizon: park in the furthest top-level slot and re-place it
+            // when that slot cascades
+            slot = (int) (((currentTick >> (BITS * (LEVELS - 1))) - 1) & MASK);
+        } else {
+            slot = (int) ((lease.expiryTick >> (BITS * level)) & MASK);
+        }
+        Lease head = wheels[level][slot];
+        lease.prev = null;
+        lease.next = head;
+        if(head != null) head.prev = lease;
+        wheels[level][slot] = lease;
+        lease.level = level;
+        lease.slot = slot;
+    }
+
+    // When the lower levels wrap around, pull the next slot of each higher level down
+    private void cascade(){
+        for(int level = 1; level < LEVELS; level++) {
+            if((currentTick & ((1L << (BITS * level)) - 1)) != 0) return;
+            int slot = (int) ((currentTick >> (BITS * level)) & MASK);
+            Lease l = wheels[level][slot];
+            wheels[level][slot] = null;
+            while(l != null) {
+                Lease next = l.next;
+                place(l);
+                l = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package threadsafe.ImprovedSolution;
+
+import java.util.Arrays;
+
+// Open-addressing set of ints (node ids, uids), no boxing. Slot occupancy lives in its own
+// array, so every int, negative ones included, is a valid member.
+// Not thread-safe: callers guard each instance (the uid index mutates them inside ConcurrentHashMap.compute).
+class IntHashSet {
+    private static final byte EMPTY = 0, FULL = 1, REMOVED = 2;
+
+    private int[] slots;
+    private byte[] state;
+    private int size;
+    private int used; // live + tombstones, drives rehashing
+
+    IntHashSet(){
+        this(8);
+    }
+
+    IntHashSet(int expected){
+        int cap = 8;
+        while(cap < expected * 2) cap <<= 1;
+        slots = new int[cap];
+        state = new byte[cap];
+    }
+
+    int size(){
+        return size;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    boolean contains(int v){
+        int mask = slots.length - 1;
+        for(int i = mix(v) & mask; ; i = (i + 1) & mask){
+            if(state[i] == EMPTY) return false;
+            if(state[i] == FULL && slots[i] == v) return true;
+        }
+    }
+
+    boolean add(int v){
+        if((used + 1) * 4 > slots.length * 3){
+            // grow when mostly live entries, otherwise just sweep the tombstones
+            rehash((size + 1) * 8 > slots.length * 3 ? slots.length * 2 : slots.length);
+        }
+        int mask = slots.length - 1;
+        int tomb = -1;
+        for(int i = mix(v) & mask; ; i = (i + 1) & mask){
+            byte s = state[i];
+            if(s == FULL && slots[i] == v) return false;
+            if(s == REMOVED && tomb < 0) tomb = i;
+            if(s == EMPTY){
+                if(tomb >= 0) i = tomb;
+                else used++;
+                slots[i] = v;
+                state[i] = FULL;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean remove(int v){
+        int mask = slots.length - 1;
+        for(int i = mix(v) & mask; ; i = (i + 1) & mask){
+            byte s = state[i];
+            if(s == FULL && slots[i] == v){
+                state[i] = REMOVED;
+                size--;
+                return true;
+            }
+            if(s == EMPTY) return false;
+        }
+    }
+
+    void clear(){
+        Arrays.fill(state, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    int[] toArray(){
+        int[] out = new int[size];
+        int k = 0;
+        for(int i = 0; i < slots.length; i++){
+            if(state[i] == FULL) out[k++] = slots[i];
+        }
+        return out;
+    }
+
+    private void rehash(int cap){
+        int[] old = slots;
+        byte[] oldState = state;
+        slots = new int[cap];
+        state = new byte[cap];
+        size = 0;
+        used = 0;
+        for(int i = 0; i < old.length; i++){
+            if(oldState[i] == FULL) add(old[i]);
+        }
+    }
+
+    private static int mix(int v){
+        int h = v * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,18 @@
+package threadsafe.ImprovedSolution;
+
+// A lease on a locked node. Renewing or unlocking cancels the entry, so the wheel only
+// holds leases that are still live.
+class Lease {
+    final Node node;
+    final long deadline; // millis on the wheel's clock
+    long expiryTick;
+    // Intrusive doubly linked bucket list, so scheduling allocates nothing beyond the Lease
+    // and cancelling is O(1). level is -1 while the entry is not on the wheel.
+    Lease prev, next;
+    int level = -1, slot;
+
+    Lease(Node node, long deadline){
+        this.node = node;
+        this.deadline = deadline;
+    }
+}
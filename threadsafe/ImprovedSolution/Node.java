@@ -0,0 +1,38 @@
+package threadsafe.ImprovedSolution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+class Node {
+    int id; // index in the input order; parents always get a smaller id than their children
+    String name;
+    Node parent;
+    List<Node> children;
+    volatile boolean isLocked; // read without any lock by the fast-fail checks
+    int lockedBy;
+    // Exclusive and shared counts of the subtree live in the tree's SubtreeCounts
+    final DescendantOwners descendantOwners = new DescendantOwners(); // uids owning the exclusive locks below
+    IntHashSet sharedBy;       // uids holding this node in shared mode; null while nobody does
+    Lease lease; // pending expiry of the lock; null when it does not expire
+    // Threads parked in lockBlocking/tryLock; guarded by `lock`, created on first wait
+    ArrayDeque<Waiter> waiters;      // want this node, blocked by its own lock or a locked descendant
+    ArrayDeque<Waiter> waitersBelow; // want a descendant, blocked by this node being locked
+
+    // TODO: Add per-node lock
+    final ReentrantLock lock = new ReentrantLock(true); // fair lock for fair scheduling (FCFS)
+
+    // Version stamp for optimistic readers. Writers take it only while they already
+    // hold `lock`, so it is never contended between writers and readers never acquire it.
+    final StampedLock stamp = new StampedLock();
+
+    public Node(int id, String name){
+        this.id = id;
+        this.name = name;
+        this.children = new ArrayList<>();
+        this.isLocked = false;
+        this.lockedBy = -1;
+    }
+}
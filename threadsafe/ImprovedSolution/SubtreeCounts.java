@@ -0,0 +1,84 @@
+package threadsafe.ImprovedSolution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Exclusive and shared lock counts of every node's subtree (the node itself excluded), kept
+// out of the Node objects in one int array so they can be read with no lock and no stamp.
+// A count is only written by a thread holding that node's lock, so writers never race each
+// other and a volatile store is enough; readers see every count at a single instant.
+//
+// Nodes near the root have their counts rewritten by every lock change in a large subtree,
+// and the m-ary input numbers siblings consecutively, so packed two ints per node a whole
+// sibling group shares one cache line. The writes are serialized at the root, but the reads
+// are not: the fast fail reads a node's counts on every lock, lockShared and upgrade, so a
+// write for one sibling evicts the line that other cores are reading for its neighbours.
+// Ids follow the input's BFS order, so the first HOT_NODES ids are the top of the tree, and
+// the layout decides how they are placed:
+//
+// - PACKED: every node two ints after the previous one; smallest, siblings share lines
+// - PADDED: each hot node gets a 64-byte line to itself (1 KB per 16 nodes)
+// - INTERLEAVED: the hot nodes are dealt round-robin over HOT_LINES lines, so ids less than
+//   HOT_LINES apart (a sibling group for m <= HOT_LINES) never share one, with no padding
+//
+// Nodes past the hot region are packed in every layout.
+class SubtreeCounts {
+    enum Layout { PACKED, PADDED, INTERLEAVED }
+
+    static final int HOT_NODES = 64;
+    private static final int LINE = 16;                    // ints per 64-byte cache line
+    private static final int PER_LINE = LINE / 2;          // nodes per line when packed
+    private static final int HOT_LINES = HOT_NODES / PER_LINE;
+    private static final VarHandle INT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Layout layout;
+    private final int[] counts;
+    private final int hot;    // nodes placed by the layout
+    private final int packed; // first int of the packed region
+
+    SubtreeCounts(int n, Layout layout){
+        this.layout = layout;
+        hot = layout == Layout.PACKED ? 0 : Math.min(n, HOT_NODES);
+        int hotInts = switch(layout){
+            case PACKED -> 0;
+            case PADDED -> hot * LINE;
+            case INTERLEAVED -> HOT_LINES * LINE;
+        };
+        // A line of padding at both ends keeps the array header and its neighbours off the hot lines
+        packed = LINE + hotInts;
+        counts = new int[packed + (n - hot) * 2 + LINE];
+    }
+
+    Layout layout(){
+        return layout;
+    }
+
+    private int slot(int id){
+        if(id >= hot) return packed + (id - hot) * 2;
+        if(layout == Layout.PADDED) return LINE + id * LINE;
+        return LINE + (id % HOT_LINES) * LINE + (id / HOT_LINES) * 2;
+    }
+
+    int locked(int id){
+        return (int) INT.getVolatile(counts, slot(id));
+    }
+
+    int shared(int id){
+        return (int) INT.getVolatile(counts, slot(id) + 1);
+    }
+
+    // Caller holds the node's lock; returns the new count
+    int addLocked(int id, int delta){
+        return add(slot(id), delta);
+    }
+
+    int addShared(int id, int delta){
+        return add(slot(id) + 1, delta);
+    }
+
+    private int add(int s, int delta){
+        int value = counts[s] + delta;
+        INT.setVolatile(counts, s, value);
+        return value;
+    }
+}
@@ -3,39 +3,53 @@ package threadsafe.ImprovedSolution;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.*; // TODO: Added for ReentrantLock
+import java.util.function.Supplier;
+import java.lang.ref.WeakReference;
 
-class Node {
-    String name;
-    Node parent;
-    List<Node> children;
-    boolean isLocked;
-    int lockedBy;
-    Set<Node> lockedDescendants;
-    Map<Integer, Integer> descendantLockHistoryByUid;
-
-    // TODO: Add per-node lock
-    final ReentrantLock lock = new ReentrantLock(true); // fair lock for fair scheduling (FCFS)
-
-    public Node(String name){
-        this.name = name;
-        this.children = new ArrayList<>();
-        this.isLocked = false;
-        this.lockedBy = -1;
-        this.lockedDescendants = new HashSet<>();
-        this.descendantLockHistoryByUid = new HashMap<>();
-    }
-}
-
-class TestClass {
-    static class TreeOfSpaceMySolution{
+public class TestClass {
+    public static class TreeOfSpaceMySolution implements AutoCloseable{
 
         private Map<String, Node> nodeMap = new HashMap<>();
+        private Node[] nodes;
+        private final SubtreeCounts below; // lock counts under each node, readable without locks
+        private final boolean optimisticUpgrade;
+        private final boolean fastFail;
+
+        // uid -> ids of the nodes it currently holds, so session cleanup never scans the tree.
+        // A uid's set is only touched inside compute on its key and is dropped when it empties,
+        // so the index holds entries for uids that hold something, not every uid ever seen.
+        private final Map<Integer, IntHashSet> locksByUid = new ConcurrentHashMap<>();
+        private final Map<Integer, IntHashSet> sharedLocksByUid = new ConcurrentHashMap<>();
+
+        // Leased locks: one timing wheel and one ticker thread for all leases, not a task per lock
+        private static final long LEASE_TICK_MILLIS = 10;
+        private final HierarchicalTimingWheel leaseWheel = new HierarchicalTimingWheel(LEASE_TICK_MILLIS);
+        private volatile Thread leaseTicker;
+        private volatile boolean closed;
 
         public TreeOfSpaceMySolution(List<String> nodeNames, int m){
-            for(String name : nodeNames){
-                nodeMap.put(name, new Node(name));
+            this(nodeNames, m, true, true, SubtreeCounts.Layout.PADDED);
+        }
+
+        // Switching either option off sends the operations it covers straight to the locked
+        // path (for comparison): optimisticUpgrade for upgrade's subtree search, fastFail for
+        // the lock-free refusals of lock, lockShared and upgrade. layout only decides where
+        // the top levels' lock counts sit in memory (see SubtreeCounts).
+        TreeOfSpaceMySolution(List<String> nodeNames, int m, boolean optimisticUpgrade, boolean fastFail,
+                SubtreeCounts.Layout layout){
+            this.optimisticUpgrade = optimisticUpgrade;
+            this.fastFail = fastFail;
+            nodes = new Node[nodeNames.size()];
+            for(int i = 0; i < nodeNames.size(); i++){
+                nodes[i] = new Node(i, nodeNames.get(i));
+                nodeMap.put(nodes[i].name, nodes[i]);
             }
+            below = new SubtreeCounts(nodes.length, layout);
 
             int idx = 1;
             for(int i = 0; i < nodeNames.size(); i++){
@@ -48,9 +62,31 @@ class TestClass {
             }
         }
 
+        // ===================== HANDLES =====================
+        // Node handle for name, or -1 if there is no such node. Handles stay valid for the
+        // life of the tree, so callers can resolve once and skip the map on every call.
+        public int resolve(String name){
+            Node node = nodeMap.get(name);
+            return node == null ? -1 : node.id;
+        }
+
         // ===================== THREAD SAFE LOCK =====================
         public boolean lock(String name, int userId){
-            Node node = nodeMap.get(name);
+            return lock(name, userId, 0L);
+        }
+
+        public boolean lock(int handle, int userId){
+            return lock(nodes[handle], userId, 0L);
+        }
+
+        // Leased lock: released automatically after ttlMillis unless renewed (ttlMillis <= 0 never expires)
+        public boolean lock(String name, int userId, long ttlMillis){
+            return lock(nodeMap.get(name), userId, ttlMillis);
+        }
+
+        private boolean lock(Node node, int userId, long ttlMillis){
+            if(ttlMillis > 0 && closed) throw new IllegalStateException("Tree is closed; leased locks cannot be taken");
+            if(fastFail && visiblyBlocked(node, true)) return false;
 
             // TODO: Step 1: Collect path root → node
             List<Node> path = getPathToRoot(node);
@@ -59,43 +95,260 @@ class TestClass {
             for(Node n : path) n.lock.lock();
 
             try {
-                // Step 3a: Check if node is already locked
-                if(node.isLocked) return false;
+                // Step 3a-3c: node itself, ancestors and descendants must all be free
+                if(findConflict(node) != null) return false;
 
-                // Step 3b: Check locked ancestors
-                if(hasLockedAncestor(node)) return false;
+                // Step 3d-3e: Lock node and update ancestors’ metadata
+                acquireLocked(node, userId);
 
-                // Step 3c: Check locked descendants
-                if(!node.lockedDescendants.isEmpty()) return false;
+                if(ttlMillis > 0) startLease(node, ttlMillis);
 
-                // Step 3d: Lock node
+                return true;
+            } finally {
+                // TODO: Step 4: Release locks in reverse order
+                unlockPath(path);
+            }
+        }
+
+        // Caller holds the root → node path. Returns the node whose lock state blocks
+        // locking `node` (itself, a locked ancestor, or itself again when a descendant is
+        // locked), or null when the lock can be taken.
+        private Node findConflict(Node node){
+            // Step 3a: Check if node is already locked, exclusively or shared
+            if(node.isLocked || isShared(node)) return node;
+
+            // Step 3b: Check locked ancestors
+            Node ancestor = lockedAncestor(node, true);
+            if(ancestor != null) return ancestor;
+
+            // Step 3c: Check locked descendants
+            if(below.locked(node.id) > 0 || below.shared(node.id) > 0) return node;
+
+            return null;
+        }
+
+        // Caller holds the root → node path and has checked findConflict
+        private void acquireLocked(Node node, int userId){
+            long w = node.stamp.writeLock();
+            try {
                 node.isLocked = true;
                 node.lockedBy = userId;
+            } finally {
+                node.stamp.unlockWrite(w);
+            }
+
+            updateDescendantsOfAncestor(node, userId, true);
+            addOwned(userId, node.id);
+        }
+
+        // ===================== SHARED LOCK =====================
+        // Any number of uids may hold a node in shared mode. Shared is compatible with shared
+        // on the node, its ancestors and its descendants, and excludes any exclusive lock there.
+        public boolean lockShared(String name, int userId){
+            Node node = nodeMap.get(name);
+            if(node == null) return false;
+            // Shared holds below do not conflict, so only the exclusive count is checked
+            if(fastFail && (visiblyBlocked(node, false) || below.locked(node.id) > 0)) return false;
 
-                // Step 3e: Update ancestors’ metadata
-                updateDescendantsOfAncestor(node, node, true);
+            List<Node> path = getPathToRoot(node);
+            for(Node n : path) n.lock.lock();
+
+            try {
+                if(node.isLocked) return false;
+                if(lockedAncestor(node, false) != null) return false;
+                if(below.locked(node.id) > 0) return false;
+                if(node.sharedBy != null && node.sharedBy.contains(userId)) return false;
 
+                long w = node.stamp.writeLock();
+                try {
+                    if(node.sharedBy == null) node.sharedBy = new IntHashSet(4);
+                    node.sharedBy.add(userId);
+                } finally {
+                    node.stamp.unlockWrite(w);
+                }
+                updateSharedOfAncestors(node, 1);
+                addOwned(sharedLocksByUid, userId, node.id);
                 return true;
             } finally {
-                // TODO: Step 4: Release locks in reverse order
                 unlockPath(path);
             }
         }
 
+        public boolean unlockShared(String name, int userId){
+            Node node = nodeMap.get(name);
+            if(node == null) return false;
+
+            List<Node> path = getPathToRoot(node);
+            for(Node n : path) n.lock.lock();
+
+            try {
+                if(node.sharedBy == null || !node.sharedBy.contains(userId)) return false;
+                releaseShared(node, userId);
+                return true;
+            } finally {
+                unlockPath(path);
+            }
+        }
+
+        // Caller holds the root → node path. The counts go down before the hold is dropped
+        // (see visiblyBlocked), and waiters are woken once both are done.
+        private void releaseShared(Node node, int userId){
+            updateSharedOfAncestors(node, -1);
+            long w = node.stamp.writeLock();
+            try {
+                node.sharedBy.remove(userId);
+            } finally {
+                node.stamp.unlockWrite(w);
+            }
+            if(node.sharedBy.isEmpty()) signalWaiters(node);
+            signalFreedAncestors(node, true);
+            removeOwned(sharedLocksByUid, userId, node.id);
+        }
+
+        private void updateSharedOfAncestors(Node node, int delta){
+            for(Node current = node.parent; current != null; current = current.parent) {
+                long w = current.stamp.writeLock();
+                try {
+                    below.addShared(current.id, delta);
+                } finally {
+                    current.stamp.unlockWrite(w);
+                }
+            }
+        }
+
+        private boolean isShared(Node node){
+            return node.sharedBy != null && !node.sharedBy.isEmpty();
+        }
+
+        // ===================== BLOCKING LOCK =====================
+        // Waits as long as it takes. A uid waiting on a conflict it holds itself waits forever.
+        public boolean lockBlocking(String name, int userId) throws InterruptedException {
+            return acquireBlocking(name, userId, Long.MAX_VALUE);
+        }
+
+        // Returns false if the lock could not be taken within the timeout
+        public boolean tryLock(String name, int userId, long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            if(nanos >= Long.MAX_VALUE / 2) return lockBlocking(name, userId);
+            return acquireBlocking(name, userId, System.nanoTime() + nanos);
+        }
+
+        // Instead of spinning, a failed attempt parks on a wait queue of the conflicting node.
+        // A release wakes only the head of the queue; the woken thread retries and then hands
+        // the wake-up on to the next waiter unless it was blocked again for the same reason,
+        // so unlocking a busy node (even the root) never makes every waiter runnable at once.
+        private boolean acquireBlocking(String name, int userId, long deadline) throws InterruptedException {
+            Node node = nodeMap.get(name);
+            if(node == null) return false;
+
+            Waiter woken = null; // the wait we were signalled out of and still owe a hand-off for
+            while(true) {
+                Waiter waiter = null;
+                Node conflict;
+                List<Node> path = getPathToRoot(node);
+                for(Node n : path) n.lock.lock();
+                try {
+                    conflict = findConflict(node);
+                    ArrayDeque<Waiter> queue = conflict == null ? null : waitQueue(conflict, node);
+                    // woken.on is on our path, so its lock is held here
+                    if(woken != null && queue != woken.queue) signalHead(woken.queue);
+
+                    if(conflict == null) {
+                        acquireLocked(node, userId);
+                    } else if(deadline == Long.MAX_VALUE || deadline - System.nanoTime() > 0) {
+                        waiter = new Waiter(conflict, queue);
+                        // Blocked again for the same reason: keep our place at the head
+                        if(woken != null && queue == woken.queue) queue.addFirst(waiter);
+                        else queue.addLast(waiter);
+                    }
+                } finally {
+                    unlockPath(path);
+                }
+
+                if(conflict == null) return true;
+                if(waiter == null) return false;
+
+                if(!park(waiter, deadline)) {
+                    // Cancelled before anyone signalled us; otherwise a wake-up is in flight
+                    // and must not be lost
+                    if(!waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) passWakeUp(waiter);
+                    if(Thread.interrupted()) throw new InterruptedException();
+                    return false;
+                }
+                woken = waiter;
+            }
+        }
+
+        // Caller holds conflict.lock. Waiters blocked by the conflicting node itself wait for it
+        // to become free; waiters blocked by it as a locked ancestor only wait for its unlock.
+        private ArrayDeque<Waiter> waitQueue(Node conflict, Node target){
+            if(conflict == target) {
+                if(conflict.waiters == null) conflict.waiters = new ArrayDeque<>();
+                return conflict.waiters;
+            }
+            if(conflict.waitersBelow == null) conflict.waitersBelow = new ArrayDeque<>();
+            return conflict.waitersBelow;
+        }
+
+        // Returns true once signalled, false on timeout or interrupt
+        private boolean park(Waiter waiter, long deadline){
+            while(waiter.state.get() == Waiter.WAITING) {
+                if(Thread.currentThread().isInterrupted()) return false;
+                if(deadline == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) return false;
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            return true;
+        }
+
+        private void passWakeUp(Waiter waiter){
+            waiter.on.lock.lock();
+            try {
+                signalHead(waiter.queue);
+            } finally {
+                waiter.on.lock.unlock();
+            }
+        }
+
+        // Caller holds node.lock and has just unlocked it: both kinds of waiters may proceed
+        private void signalWaiters(Node node){
+            signalHead(node.waiters);
+            signalHead(node.waitersBelow);
+        }
+
+        // Wakes the first live waiter only
+        private void signalHead(ArrayDeque<Waiter> queue){
+            if(queue == null) return;
+            Waiter w;
+            while((w = queue.pollFirst()) != null) {
+                if(w.state.compareAndSet(Waiter.WAITING, Waiter.SIGNALLED)) {
+                    LockSupport.unpark(w.thread);
+                    return;
+                }
+            }
+        }
+
         // ===================== THREAD SAFE UNLOCK =====================
         public boolean unlock(String name, int userId){
-            Node node = nodeMap.get(name);
+            return unlock(nodeMap.get(name), userId);
+        }
 
+        public boolean unlock(int handle, int userId){
+            return unlock(nodes[handle], userId);
+        }
+
+        private boolean unlock(Node node, int userId){
             List<Node> path = getPathToRoot(node);
             for(Node n : path) n.lock.lock();
 
             try {
                 if(!node.isLocked || node.lockedBy != userId) return false;
 
-                node.isLocked = false;
-                node.lockedBy = -1;
-
-                updateDescendantsOfAncestor(node, node, false);
+                releaseLocked(node, userId);
 
                 return true;
             } finally {
@@ -103,57 +356,459 @@ class TestClass {
             }
         }
 
+        // Caller holds the root → node path. The counts go down before the lock is cleared
+        // (see visiblyBlocked), and waiters are woken once both are done.
+        private void releaseLocked(Node node, int userId){
+            updateDescendantsOfAncestor(node, userId, false);
+            long w = node.stamp.writeLock();
+            try {
+                node.isLocked = false;
+                node.lockedBy = -1;
+            } finally {
+                node.stamp.unlockWrite(w);
+            }
+            cancelLease(node);
+            signalWaiters(node);
+            signalFreedAncestors(node, false);
+            removeOwned(userId, node.id);
+        }
+
         // ===================== THREAD SAFE UPGRADE =====================
         public boolean upgrade(String name, int userId){
-            Node node = nodeMap.get(name);
+            return upgrade(nodeMap.get(name), userId);
+        }
+
+        public boolean upgrade(int handle, int userId){
+            return upgrade(nodes[handle], userId);
+        }
+
+        // Optimistic first: the checks and the search for the locks to absorb run without
+        // any node.lock, against node's version stamp. Every lock change at or below node
+        // writes that stamp (the counters of all ancestors are updated), so a stamp that still
+        // validates means node's own fields and counters are as they were read. It does not
+        // cover the flags of the nodes below: a release lowers the counters before it clears
+        // its node (see visiblyBlocked), so the search can still meet a lock whose release
+        // has already passed node. Only the commit takes the root → node path, re-validates
+        // the stamp, checks the ancestors (whose counters change with unrelated traffic, so
+        // their stamps are not used), checks that the plan is exactly the locks now held
+        // below, and applies it. Unrelated lock traffic is blocked for the apply alone, not
+        // for the subtree search. After a few conflicting attempts it falls back to the
+        // locked version.
+        //
+        // A refusal is never decided from the snapshot. Writers update one node at a time, so
+        // a snapshot can see an unlock that has reached node but not its parent yet; two
+        // upgrades refusing on either side of such a half-applied write would contradict each
+        // other. Refusals cost no subtree walk, so they are simply decided under the locks.
+        private static final int OPTIMISTIC_UPGRADE_ATTEMPTS = 4;
+
+        private boolean upgrade(Node node, int userId){
+            if(node == null) return false;
+            if(fastFail && visiblyBlocked(node, false)) return false;
+            if(optimisticUpgrade) {
+                for(int attempt = 0; attempt < OPTIMISTIC_UPGRADE_ATTEMPTS; attempt++) {
+                    Boolean outcome = tryOptimisticUpgrade(node, userId);
+                    if(outcome != null) return outcome;
+                    Thread.onSpinWait();
+                }
+            }
+            return upgradeLocked(node, userId);
+        }
+
+        // TRUE when granted, FALSE when refused (under the locks), null to try again
+        private Boolean tryOptimisticUpgrade(Node node, int userId){
+            long s = node.stamp.tryOptimisticRead();
+            if(s == 0L) return null; // a writer is inside node right now
+
+            List<Node> plan = null;
+            try {
+                if(upgradeAllowedBelow(node, userId)) {
+                    plan = new ArrayList<>(below.locked(node.id));
+                    collectLockedBelow(node, plan);
+                }
+            } catch(RuntimeException e) {
+                return null; // torn read; the stamp cannot validate
+            }
+            if(!node.stamp.validate(s)) return null;
+            if(plan == null) return upgradeLocked(node, userId);
 
+            List<Node> path = getPathToRoot(node);
+            for(Node n : path) n.lock.lock();
+            try {
+                if(!node.stamp.validate(s)) return null;
+                if(hasLockedAncestor(node)) return false;
+                if(!planStillHeld(node, userId, plan)) return null;
+                applyUpgrade(node, userId, plan);
+                return true;
+            } finally {
+                unlockPath(path);
+            }
+        }
+
+        private boolean upgradeLocked(Node node, int userId){
             List<Node> path = getPathToRoot(node);
             for(Node n : path) n.lock.lock();
 
             try {
-                if(node == null || node.isLocked) return false;
                 if(hasLockedAncestor(node)) return false;
-                if(node.lockedDescendants.isEmpty()) return false;
-                if(node.descendantLockHistoryByUid.size() != 1) return false;
-                if(node.descendantLockHistoryByUid.getOrDefault(userId, 0) == 0) return false;
-
-                // Collect all descendant nodes that need to be unlocked
-                Set<Node> descendantsToUnlock = new HashSet<>(node.lockedDescendants);
-                
-                // Lock all descendant nodes first to prevent race conditions
-                for(Node descendant : descendantsToUnlock) {
-                    descendant.lock.lock();
-                }
-                
-                try {
-                    // Unlock all descendants
-                    for(Node n : descendantsToUnlock) {
+                if(!upgradeAllowedBelow(node, userId)) return false;
+
+                // Collect all descendant nodes that need to be unlocked. Every lock change below
+                // node needs node.lock, which we hold, so the subtree cannot change meanwhile.
+                List<Node> descendantsToUnlock = new ArrayList<>(below.locked(node.id));
+                collectLockedBelow(node, descendantsToUnlock);
+                applyUpgrade(node, userId, descendantsToUnlock);
+                return true;
+            } finally {
+                unlockPath(path);
+            }
+        }
+
+        // Caller holds the root → node path, so the count and the flags below are settled. The
+        // plan holds distinct nodes under node, so if each is still userId's lock and there are
+        // as many as node counts, they are all the locks below it.
+        private boolean planStillHeld(Node node, int userId, List<Node> plan){
+            if(plan.size() != below.locked(node.id)) return false;
+            for(Node n : plan) {
+                if(!n.isLocked || n.lockedBy != userId) return false;
+            }
+            return true;
+        }
+
+        // Everything upgrade requires of the node and its subtree; the ancestors are checked separately
+        private boolean upgradeAllowedBelow(Node node, int userId){
+            if(node.isLocked || isShared(node)) return false;
+            if(below.locked(node.id) == 0) return false;
+            // Only exclusive locks can be upgraded; shared holders below keep theirs
+            if(below.shared(node.id) > 0) return false;
+            return node.descendantOwners.ownedSolelyBy(userId);
+        }
+
+        // Caller holds the root → node path and has checked the upgrade conditions
+        private void applyUpgrade(Node node, int userId, List<Node> descendantsToUnlock){
+            // Lock all descendant nodes first to prevent race conditions
+            for(Node descendant : descendantsToUnlock) {
+                descendant.lock.lock();
+            }
+
+            try {
+                // Unlock all descendants, counts first as in releaseLocked
+                for(Node n : descendantsToUnlock) {
+                    updateDescendantsOfAncestor(n, userId, false);
+                    long w = n.stamp.writeLock();
+                    try {
                         n.isLocked = false;
                         n.lockedBy = -1;
-                        n.lockedDescendants.clear();
-                        n.descendantLockHistoryByUid.clear();
-                        updateDescendantsOfAncestor(n, n, false);
+                    } finally {
+                        n.stamp.unlockWrite(w);
                     }
+                    cancelLease(n);
+                    removeOwned(userId, n.id);
+                }
 
-                    // Lock current node
+                // Lock current node
+                long w = node.stamp.writeLock();
+                try {
                     node.isLocked = true;
                     node.lockedBy = userId;
-                    node.descendantLockHistoryByUid.clear();
-                    node.lockedDescendants.clear();
-                    updateDescendantsOfAncestor(node, node, true);
-
-                    return true;
                 } finally {
-                    // Release descendant locks
-                    for(Node descendant : descendantsToUnlock) {
-                        descendant.lock.unlock();
+                    node.stamp.unlockWrite(w);
+                }
+                updateDescendantsOfAncestor(node, userId, true);
+                addOwned(userId, node.id);
+
+                // Those waiting on a released descendant or on a node between it and node
+                for(Node n : descendantsToUnlock) {
+                    signalWaiters(n);
+                    signalFreedAncestors(n, false);
+                }
+            } finally {
+                // Release descendant locks
+                for(Node descendant : descendantsToUnlock) {
+                    descendant.lock.unlock();
+                }
+            }
+        }
+
+        // ===================== LEASES =====================
+        // Extends a leased lock held by userId to expire ttlMillis from now
+        public boolean renew(String name, int userId, long ttlMillis){
+            Node node = nodeMap.get(name);
+            if(node == null || ttlMillis <= 0) return false;
+
+            // Only the node's own state changes, so its lock alone is enough
+            node.lock.lock();
+            try {
+                if(!node.isLocked || node.lockedBy != userId || node.lease == null) return false;
+                // Replace the old entry rather than leave it to fire as a stale no-op
+                leaseWheel.cancel(node.lease);
+                node.lease = new Lease(node, leaseWheel.now() + ttlMillis);
+                leaseWheel.schedule(node.lease);
+                return true;
+            } finally {
+                node.lock.unlock();
+            }
+        }
+
+        // Caller holds node.lock
+        private void startLease(Node node, long ttlMillis){
+            node.lease = new Lease(node, leaseWheel.now() + ttlMillis);
+            leaseWheel.schedule(node.lease);
+            if(leaseTicker == null) startLeaseTicker();
+        }
+
+        // Caller holds node.lock
+        private void cancelLease(Node node){
+            if(node.lease == null) return;
+            leaseWheel.cancel(node.lease);
+            node.lease = null;
+        }
+
+        private synchronized void startLeaseTicker(){
+            if(leaseTicker != null || closed) return;
+            Thread ticker = new Thread(tickLeases(new WeakReference<>(this)), "lease-ticker");
+            ticker.setDaemon(true);
+            ticker.start();
+            leaseTicker = ticker;
+        }
+
+        // The ticker only holds the tree weakly, so a tree that is dropped without close()
+        // can still be collected; the thread then ends on its next tick
+        private static Runnable tickLeases(WeakReference<TreeOfSpaceMySolution> treeRef){
+            return () -> {
+                while(!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(LEASE_TICK_MILLIS);
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                    TreeOfSpaceMySolution tree = treeRef.get();
+                    if(tree == null) return;
+                    // Release outside the wheel's monitor: expiring takes node locks
+                    Lease l = tree.leaseWheel.advanceTo(tree.leaseWheel.now());
+                    while(l != null) {
+                        Lease next = l.next;
+                        tree.expire(l);
+                        l = next;
                     }
                 }
+            };
+        }
+
+        // Stops the lease ticker and drops all pending expiries. Locks already held stay held
+        // and no longer expire; leased locks cannot be taken afterwards.
+        @Override
+        public void close(){
+            Thread ticker;
+            synchronized(this) {
+                closed = true;
+                ticker = leaseTicker;
+            }
+            if(ticker != null) {
+                ticker.interrupt();
+                try {
+                    ticker.join();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            leaseWheel.clear();
+        }
+
+        // Same path locking and ancestor updates as unlock, skipped if the lease was renewed,
+        // released or replaced since this entry was scheduled
+        private void expire(Lease lease){
+            Node node = lease.node;
+            List<Node> path = getPathToRoot(node);
+            for(Node n : path) n.lock.lock();
+            try {
+                if(!node.isLocked || node.lease != lease) return;
+                releaseLocked(node, node.lockedBy);
             } finally {
                 unlockPath(path);
             }
         }
 
+        // ===================== RELEASE ALL LOCKS OF A USER =====================
+        // Unlocks every node held by userId, exclusive or shared: O(k·h) for k held nodes
+        // instead of scanning all n nodes. Returns how many locks were released.
+        public int releaseAll(int userId){
+            return releaseAllExclusive(userId) + releaseAllShared(userId);
+        }
+
+        private int releaseAllShared(int userId){
+            int[] held = heldBy(sharedLocksByUid, userId);
+            int released = 0;
+            for(int id : held) {
+                if(unlockShared(nodes[id].name, userId)) released++;
+            }
+            return released;
+        }
+
+        // One pass over all exclusive locks of userId
+        private int releaseAllExclusive(int userId){
+            int[] held = heldBy(locksByUid, userId);
+            if(held.length == 0) return 0;
+
+            // Union of all root → node paths. Ids grow from parent to child, so taking the
+            // locks in ascending id order agrees with the root → node order used elsewhere.
+            IntHashSet onPath = new IntHashSet(held.length * 4);
+            for(int id : held) {
+                for(Node cur = nodes[id]; cur != null && onPath.add(cur.id); cur = cur.parent);
+            }
+            int[] order = onPath.toArray();
+            Arrays.sort(order);
+            for(int id : order) nodes[id].lock.lock();
+
+            try {
+                // Ownership may have changed between the snapshot and taking the locks
+                int[] released = new int[held.length];
+                int k = 0;
+                for(int id : held) {
+                    Node n = nodes[id];
+                    if(n.isLocked && n.lockedBy == userId) released[k++] = id;
+                }
+
+                // One pass up from every released node: lower each ancestor's count and tally
+                // how many of this user's locks it loses, applied once below. As in
+                // releaseLocked, a node's counts go down before it is cleared.
+                int[] lost = new int[order.length];
+                for(int i = 0; i < k; i++) {
+                    Node n = nodes[released[i]];
+                    for(Node cur = n.parent; cur != null; cur = cur.parent) {
+                        long cw = cur.stamp.writeLock();
+                        try {
+                            below.addLocked(cur.id, -1);
+                        } finally {
+                            cur.stamp.unlockWrite(cw);
+                        }
+                        lost[Arrays.binarySearch(order, cur.id)]++;
+                    }
+                    long w = n.stamp.writeLock();
+                    try {
+                        n.isLocked = false;
+                        n.lockedBy = -1;
+                    } finally {
+                        n.stamp.unlockWrite(w);
+                    }
+                    cancelLease(n);
+                }
+                for(int i = 0; i < order.length; i++) {
+                    if(lost[i] == 0) continue;
+                    Node a = nodes[order[i]];
+                    long w = a.stamp.writeLock();
+                    try {
+                        a.descendantOwners.remove(userId, lost[i]);
+                    } finally {
+                        a.stamp.unlockWrite(w);
+                    }
+                    if(below.locked(a.id) == 0) signalHead(a.waiters);
+                }
+                for(int i = 0; i < k; i++) signalWaiters(nodes[released[i]]);
+
+                int count = k;
+                locksByUid.computeIfPresent(userId, (u, owned) -> {
+                    for(int i = 0; i < count; i++) owned.remove(released[i]);
+                    return owned.isEmpty() ? null : owned;
+                });
+                return k;
+            } finally {
+                for(int i = order.length - 1; i >= 0; i--) nodes[order[i]].lock.unlock();
+            }
+        }
+
+        private void addOwned(int userId, int id){
+            addOwned(locksByUid, userId, id);
+        }
+
+        private void removeOwned(int userId, int id){
+            removeOwned(locksByUid, userId, id);
+        }
+
+        private void addOwned(Map<Integer, IntHashSet> index, int userId, int id){
+            index.compute(userId, (u, owned) -> {
+                if(owned == null) owned = new IntHashSet();
+                owned.add(id);
+                return owned;
+            });
+        }
+
+        // The emptied set is removed in the same atomic step, so a concurrent add either
+        // lands in it first or creates a fresh one
+        private void removeOwned(Map<Integer, IntHashSet> index, int userId, int id){
+            index.computeIfPresent(userId, (u, owned) -> {
+                owned.remove(id);
+                return owned.isEmpty() ? null : owned;
+            });
+        }
+
+        private int[] heldBy(Map<Integer, IntHashSet> index, int userId){
+            int[][] held = {new int[0]};
+            index.computeIfPresent(userId, (u, owned) -> {
+                held[0] = owned.toArray();
+                return owned;
+            });
+            return held[0];
+        }
+
+        // ===================== READ-ONLY QUERIES =====================
+        // Readers never take node.lock or the stamp: they read optimistically and retry
+        // if a writer touched the node meanwhile, so they never block writers or each other.
+
+        public boolean isLocked(String name){
+            Node node = nodeMap.get(name);
+            if(node == null) return false;
+            return readOptimistically(node, () -> node.isLocked);
+        }
+
+        // Returns the uid holding the node, or -1 when it is free
+        public int ownerOf(String name){
+            Node node = nodeMap.get(name);
+            if(node == null) return -1;
+            return readOptimistically(node, () -> node.isLocked ? node.lockedBy : -1);
+        }
+
+        public int countLockedUnder(String name){
+            Node node = nodeMap.get(name);
+            if(node == null) return 0;
+            return below.locked(node.id);
+        }
+
+        public List<String> listLockedUnder(String name){
+            Node node = nodeMap.get(name);
+            if(node == null) return Collections.emptyList();
+            // Any lock change in the subtree also writes node's count, so validating node's
+            // stamp covers the nodes visited below it
+            return readOptimistically(node, () -> {
+                List<Node> locked = new ArrayList<>(below.locked(node.id));
+                collectLockedBelow(node, locked);
+                List<String> names = new ArrayList<>(locked.size());
+                for(Node d : locked) names.add(d.name);
+                return names;
+            });
+        }
+
+        // Seqlock-style read: a torn read (or an exception from iterating a set that was
+        // being resized) is discarded whenever the stamp fails validation.
+        private <T> T readOptimistically(Node node, Supplier<T> reader){
+            while(true) {
+                long s = node.stamp.tryOptimisticRead();
+                if(s != 0L) {
+                    T result = null;
+                    RuntimeException failure = null;
+                    try {
+                        result = reader.get();
+                    } catch(RuntimeException e) {
+                        failure = e;
+                    }
+                    if(node.stamp.validate(s)) {
+                        if(failure != null) throw failure;
+                        return result;
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+
         // ===================== HELPERS =====================
 
         // TODO: Utility to collect path root → node
@@ -175,40 +830,287 @@ class TestClass {
             }
         }
 
-        private boolean updateDescendantsOfAncestor(Node node, Node lockedNode, boolean isAdded){
+        // The owner is passed in rather than read from the node, so callers are free to order
+        // this against setting or resetting the node's lockedBy (see visiblyBlocked)
+        private boolean updateDescendantsOfAncestor(Node node, int ownerUid, boolean isAdded){
             Node current = node.parent;
             while(current != null){
                 // Note: current node is already locked by the calling method
                 // since we lock the entire path from root to target node
-                if(isAdded) current.lockedDescendants.add(lockedNode);
-                else current.lockedDescendants.remove(lockedNode);
-
-                if(isAdded) {
-                    current.descendantLockHistoryByUid.put(
-                        lockedNode.lockedBy,
-                        current.descendantLockHistoryByUid.getOrDefault(lockedNode.lockedBy, 0) + 1
-                    );
-                } else {
-                    int count = current.descendantLockHistoryByUid.getOrDefault(lockedNode.lockedBy, 0);
-                    if(count <= 1) current.descendantLockHistoryByUid.remove(lockedNode.lockedBy);
-                    else current.descendantLockHistoryByUid.put(lockedNode.lockedBy, count - 1);
+                long w = current.stamp.writeLock();
+                try {
+                    applyDescendantUpdate(current, ownerUid, isAdded);
+                } finally {
+                    current.stamp.unlockWrite(w);
                 }
                 current = current.parent;
             }
             return true;
         }
 
+        // After a release has lowered the counts and cleared the node: wakes the waiters of
+        // the ancestors left with nothing of that kind below. Counts only grow towards the
+        // root, so the walk stops at the first ancestor that still has some.
+        private void signalFreedAncestors(Node node, boolean shared){
+            for(Node current = node.parent; current != null; current = current.parent){
+                if((shared ? below.shared(current.id) : below.locked(current.id)) > 0) return;
+                signalHead(current.waiters);
+            }
+        }
+
+        private void applyDescendantUpdate(Node current, int ownerUid, boolean isAdded){
+            below.addLocked(current.id, isAdded ? 1 : -1);
+
+            // Two int writes in the common single-owner case, no boxing
+            if(isAdded) current.descendantOwners.add(ownerUid);
+            else current.descendantOwners.remove(ownerUid, 1);
+        }
+
+        // Walks only into children whose subtree holds an exclusive lock: O(k·h·m) for k locks
+        private void collectLockedBelow(Node node, List<Node> out){
+            Deque<Node> stack = new ArrayDeque<>(node.children);
+            while(!stack.isEmpty()){
+                Node n = stack.pop();
+                if(n.isLocked){
+                    out.add(n); // nothing below a locked node is locked
+                } else if(below.locked(n.id) > 0){
+                    for(Node child : n.children) stack.push(child);
+                }
+            }
+        }
+
+        // Lock-free fast fail: true when a lock visibly held right now rules the request out,
+        // so it can be refused without touching any node.lock. Only positive evidence is used.
+        // Every path raises a count after setting the lock or shared hold below it, and
+        // lowers it before clearing that lock or hold, so a count above zero (like a set
+        // isLocked) means the lock is still held at the instant of the read: the refusal
+        // linearizes there. A zero proves nothing (the update may not have reached this node
+        // yet), and neither do shared holds on the node and its ancestors (sharedBy is not
+        // safe to read unlocked): those cases go on to the locked path. checkBelow is false
+        // for upgrade, which wants locks below, and for lockShared, which tolerates shared
+        // holds below.
+        private boolean visiblyBlocked(Node node, boolean checkBelow){
+            if(node.isLocked) return true;
+            if(checkBelow && (below.locked(node.id) > 0 || below.shared(node.id) > 0)) return true;
+            for(Node current = node.parent; current != null; current = current.parent){
+                if(current.isLocked) return true;
+            }
+            return false;
+        }
+
         private boolean hasLockedAncestor(Node node){
+            return lockedAncestor(node, true) != null;
+        }
+
+        private Node lockedAncestor(Node node, boolean includeShared){
             Node current = node.parent;
             while(current != null){
-                if(current.isLocked) return true;
+                if(current.isLocked || (includeShared && isShared(current))) return current;
                 current = current.parent;
             }
-            return false;
+            return null;
+        }
+    }
+
+    // One thread repeatedly locks many leaves in the root's first subtree and upgrades them
+    // into its root; the others lock and unlock leaves in the remaining subtrees. Reports
+    // both sides' throughput with the optimistic upgrade on and off.
+    static void benchmark(int depth, int locksPerUpgrade, int others, long millis) throws InterruptedException {
+        int m = 4;
+        int n = 0;
+        for(int d = 0, level = 1; d <= depth; d++, level *= m) n += level;
+        List<String> names = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) names.add("N" + i);
+        int firstLeaf = n - (int) Math.pow(m, depth);
+        int leavesPerSubtree = (n - firstLeaf) / m;
+
+        for(boolean optimistic : new boolean[]{false, true, false, true}) {
+            TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, m, optimistic, true, SubtreeCounts.Layout.PADDED);
+            int subtreeRoot = tree.resolve("N1");
+            int leafBase = firstLeaf;
+            AtomicLong upgrades = new AtomicLong(), otherOps = new AtomicLong();
+            AtomicInteger stop = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> {
+                Random random = new Random(1);
+                while(stop.get() == 0) {
+                    for(int k = 0; k < locksPerUpgrade; k++) tree.lock(leafBase + random.nextInt(leavesPerSubtree), 1);
+                    if(tree.upgrade(subtreeRoot, 1)) upgrades.incrementAndGet();
+                    tree.unlock(subtreeRoot, 1);
+                }
+            }));
+            for(int t = 0; t < others; t++) {
+                int uid = 2 + t;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(uid);
+                    long done = 0;
+                    while(stop.get() == 0) {
+                        int leaf = leafBase + leavesPerSubtree * (1 + random.nextInt(m - 1)) + random.nextInt(leavesPerSubtree);
+                        if(tree.lock(leaf, uid)) tree.unlock(leaf, uid);
+                        done++;
+                    }
+                    otherOps.addAndGet(done);
+                }));
+            }
+            for(Thread t : threads) t.start();
+            Thread.sleep(millis);
+            stop.set(1);
+            for(Thread t : threads) t.join();
+            System.out.printf("%-11s %8.0f upgrades/s (%d locks each), %10.0f unrelated lock+unlock/s%n",
+                optimistic ? "optimistic" : "locked", upgrades.get() * 1000.0 / millis, locksPerUpgrade, otherOps.get() * 1000.0 / millis);
+        }
+    }
+
+    // The root's first subtree stays locked by one uid. Some threads keep trying to lock
+    // leaves inside it, which is always refused, while one thread locks and unlocks leaves in
+    // the other subtrees. Reports both rates with the lock-free fast fail on and off.
+    static void benchmarkRefusals(int depth, int refusers, long millis) throws InterruptedException {
+        int m = 4;
+        int n = 0;
+        for(int d = 0, level = 1; d <= depth; d++, level *= m) n += level;
+        List<String> names = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) names.add("N" + i);
+        int leafBase = n - (int) Math.pow(m, depth);
+        int leavesPerSubtree = (n - leafBase) / m;
+
+        for(boolean fastFail : new boolean[]{false, true, false, true}) {
+            TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, m, true, fastFail, SubtreeCounts.Layout.PADDED);
+            tree.lock(tree.resolve("N1"), 1);
+            AtomicLong refused = new AtomicLong(), otherOps = new AtomicLong();
+            AtomicInteger stop = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            for(int t = 0; t < refusers; t++) {
+                int uid = 2 + t;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(uid);
+                    long done = 0;
+                    while(stop.get() == 0) {
+                        if(!tree.lock(leafBase + random.nextInt(leavesPerSubtree), uid)) done++;
+                    }
+                    refused.addAndGet(done);
+                }));
+            }
+            threads.add(new Thread(() -> {
+                Random random = new Random(1);
+                long done = 0;
+                while(stop.get() == 0) {
+                    int leaf = leafBase + leavesPerSubtree * (1 + random.nextInt(m - 1)) + random.nextInt(leavesPerSubtree);
+                    if(tree.lock(leaf, 0)) tree.unlock(leaf, 0);
+                    done++;
+                }
+                otherOps.addAndGet(done);
+            }));
+            for(Thread t : threads) t.start();
+            Thread.sleep(millis);
+            stop.set(1);
+            for(Thread t : threads) t.join();
+            System.out.printf("%-9s %12.0f refused locks/s, %10.0f unrelated lock+unlock/s%n",
+                fastFail ? "fast fail" : "locked", refused.get() * 1000.0 / millis, otherOps.get() * 1000.0 / millis);
+        }
+    }
+
+    // Regression: upgrade's optimistic search runs while an unlock below it has lowered the
+    // counts but not yet cleared its node. Holding the node's stamp stops the unlock in that
+    // window; the search then finds the half-released lock, and the commit must not absorb it.
+    static void checkUpgradeDuringUnlock() throws InterruptedException {
+        List<String> names = new ArrayList<>();
+        for(int i = 0; i < 7; i++) names.add("N" + i);
+        TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, 2);
+        tree.lock("N3", 1);
+        tree.lock("N4", 1);
+
+        Node n3 = tree.nodeMap.get("N3");
+        Node root = tree.nodeMap.get("N0");
+        boolean[] results = new boolean[2];
+        long r = n3.stamp.readLock();
+        Thread unlock = new Thread(() -> results[0] = tree.unlock("N3", 1));
+        Thread upgrade = new Thread(() -> results[1] = tree.upgrade("N1", 1));
+        try {
+            unlock.start();
+            while(tree.countLockedUnder("N1") != 1) Thread.onSpinWait();
+            upgrade.start();
+            // The upgrade has its plan once it queues for the path the unlock still holds
+            while(!root.lock.hasQueuedThread(upgrade)) Thread.onSpinWait();
+        } finally {
+            n3.stamp.unlockRead(r);
+        }
+        unlock.join();
+        upgrade.join();
+
+        String failure = null;
+        if(!results[0] || !results[1]) failure = "unlock " + results[0] + ", upgrade " + results[1];
+        else if(tree.countLockedUnder("N1") != 0 || tree.countLockedUnder("N0") != 1) {
+            failure = "counts N1 " + tree.countLockedUnder("N1") + ", N0 " + tree.countLockedUnder("N0");
+        } else if(tree.lock("N0", 2)) failure = "N0 granted while N1 is locked";
+        if(failure != null) throw new AssertionError("upgrade during unlock: " + failure);
+        System.out.println("upgrade during unlock: ok");
+    }
+
+    // The pattern the layouts are for: count writes near the root while other cores read the
+    // counts of the neighbouring siblings without a lock. One thread locks and unlocks leaves
+    // under N1, rewriting the counts of N0 and N1; the others are refused by the fast fail on
+    // N2..N(m), whose subtrees each hold a lock, which reads only those siblings' counts.
+    // Reports both rates for every layout, twice.
+    static void benchmarkLayouts(int depth, int readers, long millis) throws InterruptedException {
+        int m = 4;
+        int n = 0;
+        for(int d = 0, level = 1; d <= depth; d++, level *= m) n += level;
+        List<String> names = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) names.add("N" + i);
+        int leafBase = n - (int) Math.pow(m, depth);
+        int leavesPerSubtree = (n - leafBase) / m;
+
+        for(int round = 0; round < 2; round++) {
+            for(SubtreeCounts.Layout layout : SubtreeCounts.Layout.values()) {
+                TreeOfSpaceMySolution tree = new TreeOfSpaceMySolution(names, m, true, true, layout);
+                for(int c = 1; c < m; c++) tree.lock(leafBase + c * leavesPerSubtree, 1);
+                AtomicLong refused = new AtomicLong(), writes = new AtomicLong();
+                AtomicInteger stop = new AtomicInteger();
+                List<Thread> threads = new ArrayList<>();
+                threads.add(new Thread(() -> {
+                    Random random = new Random(0);
+                    long done = 0;
+                    while(stop.get() == 0) {
+                        int leaf = leafBase + random.nextInt(leavesPerSubtree);
+                        if(tree.lock(leaf, 0)) tree.unlock(leaf, 0);
+                        done++;
+                    }
+                    writes.addAndGet(done);
+                }));
+                for(int t = 0; t < readers; t++) {
+                    int uid = 2 + t;
+                    int sibling = 2 + t % (m - 1);
+                    threads.add(new Thread(() -> {
+                        long done = 0;
+                        while(stop.get() == 0) {
+                            if(!tree.lock(sibling, uid)) done++;
+                        }
+                        refused.addAndGet(done);
+                    }));
+                }
+                for(Thread t : threads) t.start();
+                Thread.sleep(millis);
+                stop.set(1);
+                for(Thread t : threads) t.join();
+                System.out.printf("%-11s %12.0f refused sibling locks/s, %10.0f lock+unlock under N1/s%n",
+                    layout, refused.get() * 1000.0 / millis, writes.get() * 1000.0 / millis);
+            }
         }
     }
 
     public static void main(String args[] ) throws Exception {
+        if(args.length > 0 && args[0].equals("check")){
+            checkUpgradeDuringUnlock();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("bench")){
+            int others = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+            benchmark(8, 512, others, 3000);
+            benchmarkRefusals(8, others, 3000);
+            benchmarkLayouts(8, others, 2000);
+            return;
+        }
+
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         
         int n = Integer.parseInt(br.readLine());
@@ -0,0 +1,19 @@
+package threadsafe.ImprovedSolution;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A thread parked in lockBlocking/tryLock on the node that made its attempt fail
+class Waiter {
+    static final int WAITING = 0, SIGNALLED = 1, CANCELLED = 2;
+
+    final Thread thread = Thread.currentThread();
+    final AtomicInteger state = new AtomicInteger(WAITING);
+    final Node on;
+    final ArrayDeque<Waiter> queue;
+
+    Waiter(Node on, ArrayDeque<Waiter> queue){
+        this.on = on;
+        this.queue = queue;
+    }
+}
@@ -0,0 +1,782 @@
+package tiered;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/*
+ * Lock tree with hot/cold storage tiers.
+ *
+ * The tree is cut at a fixed depth. Nodes above the cut (the top) are always resident. Every
+ * node at the cut roots a segment: its whole subtree, stored once at construction as a
+ * deflate-compressed block of (name, local parent) records, either in memory or in one spill
+ * file. A segment is inflated into primitive arrays when an operation first touches one of its
+ * nodes and dropped back to the compressed form when it falls off an LRU list
+ * (LinkedHashMap in access order) while the resident node count is over budget.
+ *
+ * Only segments without locks are evicted. Their locked-descendant counters are all zero, so
+ * nothing needs writing back: the cold block never changes, and the counters kept in the top
+ * for the ancestors of a segment stay exact whether it is resident or not. For the same
+ * reason the pruned DFS of an upgrade only ever enters segments with locks, which are
+ * resident, so upgrade never faults.
+ *
+ * Names of resident segments are found in one resident map, so it grows and shrinks with the
+ * segments. Any other name goes through an index of 64-bit name hashes, split by hash into
+ * pages of about PAGE_ENTRIES entries. Pages go to the cold tier like segments, uncompressed
+ * since hashes do not deflate, and are read back into open-addressed tables on a miss,
+ * behind their own LRU list bounded to the node budget, so nothing is held per node of the
+ * whole tree. Names whose hashes collide across segments go
+ * to a small overflow map instead.
+ *
+ * Semantics are those of moderate.TreeOfSpaceDescendantTracking. Not thread-safe.
+ */
+public class TieredTree implements Closeable {
+    private static final int CONFLICT = -2; // hash index value: look the name up in overflow
+    private static final int TOP = -1;      // upgrade scratch: the node is above the cut
+    private static final int PAGE_ENTRIES = 1 << 9; // name hashes per index page, on average
+
+    // Where a block of the cold tier lives
+    private static class ColdBlock {
+        long offset;         // in the spill file, when there is one
+        int length;          // bytes of the cold form
+        byte[] bytes;        // the cold form, when kept in memory
+    }
+
+    // One subtree below the cut
+    private static final class Segment extends ColdBlock {
+        final int id;
+        final int topParent; // top index of the segment root's parent
+        final int size;
+        int locks;           // locked nodes in the segment; > 0 pins it resident
+
+        // Resident form, null when cold
+        String[] names;
+        int[] parent;      // local index, -1 at the segment root
+        int[] childStart;  // CSR children: childList[childStart[v] .. childStart[v + 1])
+        int[] childList;
+        int[] lockedBy;
+        int[] lockedBelow;
+
+        Segment(int id, int topParent, int size) {
+            this.id = id;
+            this.topParent = topParent;
+            this.size = size;
+        }
+    }
+
+    // One page of the name index: the (hash, segment) pairs whose hash maps to it
+    private static final class Page extends ColdBlock {
+        final int id;
+        int entries;
+
+        // Resident form, null when cold
+        long[] keys;         // open addressing, 0 = empty slot
+        int[] segment;       // segment per key, or CONFLICT
+
+        Page(int id) {
+            this.id = id;
+        }
+    }
+
+    // Children of a node: a CSR built from a parent array, or the implicit m-ary layout
+    private interface Children {
+        int begin(int v);
+        int end(int v);
+        int child(int k);
+    }
+
+    private interface SegmentVisitor {
+        void visit(int v, int localParent) throws IOException;
+    }
+
+    // Top of the tree, always resident
+    private final String[] topNames;
+    private final int[] topParent;
+    private final int[][] topChildren; // >= 0 a top node, < 0 segment -(s + 1)
+    private final int[] topLockedBy;
+    private final int[] topLockedBelow;
+    private final Map<String, Integer> topIndex = new HashMap<>();
+
+    private final Segment[] segments;
+    private final Page[] pages; // page p holds the names whose hash has pageOf(h) == p
+    private final Map<String, Integer> overflow = new HashMap<>();
+    private final Map<String, Long> residentIndex = new HashMap<>(); // name -> (segment << 32) | local index
+    private final FileChannel spill; // null keeps the cold tier in memory
+    private long spillEnd;
+
+    private final long maxResidentNodes;
+    private final long maxResidentEntries; // name index entries kept inflated
+    private long residentNodes, residentEntries;
+    // Resident segments without locks, least recently used first. Locked segments leave the
+    // list and come back when their last lock goes, so eviction never has to skip over them.
+    private final LinkedHashMap<Integer, Segment> evictable = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Page> residentPages = new LinkedHashMap<>(16, 0.75f, true);
+    private int residentSegments;
+    private long faults, evictions, indexFaults;
+
+    // Scratch for upgrade: (segment or TOP, local index) pairs
+    private int[] stackSeg = new int[64], stackNode = new int[64];
+    private int[] foundSeg = new int[64], foundNode = new int[64];
+
+    // Complete m-ary tree in level order, as in the stdin format. The layout is implicit, so
+    // the build holds nothing per node beyond the top.
+    public TieredTree(List<String> nodeNames, int m, int cutDepth, long maxResidentNodes, Path spillFile) throws IOException {
+        this(nodeNames, nodeNames.isEmpty() ? -1 : 0, mAryChildren(nodeNames.size(), m), cutDepth, maxResidentNodes, spillFile);
+    }
+
+    // parent[i] is the index of node i's parent, -1 for the root. Nodes at depth cutDepth root
+    // the segments; spillFile == null keeps the cold tier in memory. The children
+    // are regrouped into a CSR for the build and dropped with it.
+    public TieredTree(List<String> nodeNames, int[] parent, int cutDepth, long maxResidentNodes, Path spillFile) throws IOException {
+        this(nodeNames, rootOf(parent), csrChildren(parent), cutDepth, maxResidentNodes, spillFile);
+    }
+
+    private TieredTree(List<String> nodeNames, int root, Children children, int cutDepth, long maxResidentNodes, Path spillFile) throws IOException {
+        if (cutDepth < 1) throw new IllegalArgumentException("cutDepth must be at least 1: " + cutDepth);
+        this.maxResidentNodes = maxResidentNodes;
+        this.maxResidentEntries = Math.max(maxResidentNodes, PAGE_ENTRIES);
+
+        // Preorder down to the cut: top nodes get dense indices, cut nodes become segments
+        Map<Integer, Integer> localOf = new HashMap<>(); // top index, or -(s + 1) for a cut node
+        List<Integer> topOrder = new ArrayList<>(), segmentRoots = new ArrayList<>(), segmentParents = new ArrayList<>();
+        int[] stack = new int[64], stackDepth = new int[64], stackParent = new int[64];
+        int sp = 0;
+        if (root >= 0) {
+            stack[0] = root;
+            stackParent[0] = -1;
+            sp = 1;
+        }
+        while (sp > 0) {
+            sp--;
+            int v = stack[sp], d = stackDepth[sp];
+            if (d == cutDepth) {
+                localOf.put(v, -(segmentRoots.size() + 1));
+                segmentRoots.add(v);
+                segmentParents.add(stackParent[sp]);
+                continue;
+            }
+            int t = topOrder.size();
+            localOf.put(v, t);
+            topOrder.add(v);
+            for (int k = children.end(v) - 1; k >= children.begin(v); k--) {
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
+                    stackDepth = Arrays.copyOf(stackDepth, sp * 2);
+                    stackParent = Arrays.copyOf(stackParent, sp * 2);
+                }
+                stack[sp] = children.child(k);
+                stackDepth[sp] = d + 1;
+                stackParent[sp++] = t;
+            }
+        }
+
+        int tops = topOrder.size();
+        topNames = new String[tops];
+        topParent = new int[tops];
+        topLockedBy = new int[tops];
+        topLockedBelow = new int[tops];
+        topChildren = new int[tops][];
+        Arrays.fill(topParent, -1);
+        Arrays.fill(topLockedBy, -1);
+        for (int t = 0; t < tops; t++) {
+            int v = topOrder.get(t);
+            topNames[t] = nodeNames.get(v);
+            topChildren[t] = new int[children.end(v) - children.begin(v)];
+            for (int k = children.begin(v), j = 0; k < children.end(v); k++, j++) {
+                int c = localOf.get(children.child(k));
+                topChildren[t][j] = c;
+                if (c >= 0) topParent[c] = t;
+            }
+            if (topIndex.put(topNames[t], t) != null) throw new IllegalArgumentException("Duplicate node name: " + topNames[t]);
+        }
+
+        // Each segment is written out cold as its preorder records
+        segments = new Segment[segmentRoots.size()];
+        this.spill = spillFile == null ? null
+            : FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long entries = 0;
+        for (int s = 0; s < segments.length; s++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int size;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+                size = walkSegment(segmentRoots.get(s), children, (v, localParent) -> {
+                    out.writeUTF(nodeNames.get(v));
+                    out.writeInt(localParent);
+                });
+            }
+            segments[s] = new Segment(s, segmentParents.get(s), size);
+            writeCold(segments[s], bytes.toByteArray());
+            entries += size;
+        }
+
+        // Name index pages, built a batch at a time so that at most the resident entry budget
+        // is held inflated during the build; each batch walks the segments again
+        int pageCount = 1;
+        while ((long) pageCount * PAGE_ENTRIES < entries) pageCount *= 2;
+        pages = new Page[pageCount];
+        int batch = (int) Math.min(pageCount, Math.max(1, maxResidentEntries / PAGE_ENTRIES));
+        for (int first = 0; first < pageCount; first += batch) {
+            buildPages(nodeNames, children, segmentRoots, first, Math.min(pageCount, first + batch));
+        }
+    }
+
+    private static int rootOf(int[] parent) {
+        int root = -1;
+        for (int i = 0; i < parent.length; i++) if (parent[i] < 0) root = i;
+        return root;
+    }
+
+    private static Children csrChildren(int[] parent) {
+        int n = parent.length;
+        int[] start = new int[n + 1];
+        for (int i = 0; i < n; i++) if (parent[i] >= 0) start[parent[i] + 1]++;
+        for (int i = 0; i < n; i++) start[i + 1] += start[i];
+        int[] list = new int[Math.max(0, n - 1)];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < n; i++) if (parent[i] >= 0) list[fill[parent[i]]++] = i;
+        return new Children() {
+            public int begin(int v) { return start[v]; }
+            public int end(int v) { return start[v + 1]; }
+            public int child(int k) { return list[k]; }
+        };
+    }
+
+    // Children of node i are m*i+1 .. m*i+m, those below n
+    private static Children mAryChildren(int n, int m) {
+        return new Children() {
+            public int begin(int v) { return (int) Math.min(n, (long) m * v + 1); }
+            public int end(int v) { return (int) Math.min(n, (long) m * v + m + 1); }
+            public int child(int k) { return k; }
+        };
+    }
+
+    // Preorder walk of the segment rooted at r, numbering its nodes from 0; returns the size
+    private static int walkSegment(int r, Children children, SegmentVisitor visitor) throws IOException {
+        int[] stack = new int[64], stackParent = new int[64];
+        stack[0] = r;
+        stackParent[0] = -1;
+        int sp = 1, size = 0;
+        while (sp > 0) {
+            sp--;
+            int v = stack[sp], local = size++;
+            visitor.visit(v, stackParent[sp]);
+            for (int k = children.end(v) - 1; k >= children.begin(v); k--) {
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
+                    stackParent = Arrays.copyOf(stackParent, sp * 2);
+                }
+                stack[sp] = children.child(k);
+                stackParent[sp++] = local;
+            }
+        }
+        return size;
+    }
+
+    // Fills pages [first, last) from every segment and writes them out cold
+    private void buildPages(List<String> nodeNames, Children children, List<Integer> segmentRoots, int first, int last) throws IOException {
+        for (int p = first; p < last; p++) {
+            pages[p] = new Page(p);
+            allocate(pages[p], 0);
+        }
+        boolean[] conflict = new boolean[1];
+        for (int s = 0; s < segments.length; s++) {
+            int segment = s;
+            walkSegment(segmentRoots.get(s), children, (v, localParent) -> {
+                long h = hash64(nodeNames.get(v));
+                int p = pageOf(h);
+                if (p >= first && p < last && !put(pages[p], h, segment)) conflict[0] = true;
+            });
+        }
+        if (conflict[0]) {
+            // Hashes shared across segments: those names are looked up by name instead
+            for (int s = 0; s < segments.length; s++) {
+                int segment = s;
+                walkSegment(segmentRoots.get(s), children, (v, localParent) -> {
+                    String name = nodeNames.get(v);
+                    long h = hash64(name);
+                    int p = pageOf(h);
+                    if (p >= first && p < last && pages[p].segment[slot(pages[p].keys, h)] == CONFLICT) overflow.put(name, segment);
+                });
+            }
+        }
+        for (int p = first; p < last; p++) {
+            Page page = pages[p];
+            ByteBuffer out = ByteBuffer.allocate(page.entries * 12);
+            for (int k = 0; k < page.keys.length; k++) {
+                if (page.keys[k] == 0) continue;
+                out.putLong(page.keys[k]);
+                out.putInt(page.segment[k]);
+            }
+            writeCold(page, out.array());
+            page.keys = null;
+            page.segment = null;
+        }
+    }
+
+    private void writeCold(ColdBlock cold, byte[] block) throws IOException {
+        cold.length = block.length;
+        if (spill == null) {
+            cold.bytes = block;
+        } else {
+            cold.offset = spillEnd;
+            spill.write(ByteBuffer.wrap(block), spillEnd);
+            spillEnd += block.length;
+        }
+    }
+
+    private byte[] readCold(ColdBlock cold) throws IOException {
+        if (cold.bytes != null) return cold.bytes;
+        ByteBuffer buffer = ByteBuffer.allocate(cold.length);
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, cold.offset + buffer.position()) < 0) throw new EOFException("Spill file truncated");
+        }
+        return buffer.array();
+    }
+
+    // ===================== NAME INDEX =====================
+
+    private static long hash64(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h; // 0 marks an empty slot
+    }
+
+    // High bits pick the page, low bits the slot within it
+    private int pageOf(long h) {
+        return (int) (h >>> 40) & (pages.length - 1);
+    }
+
+    // Slot holding this hash, or the empty slot where it would go
+    private static int slot(long[] keys, long h) {
+        int mask = keys.length - 1;
+        int s = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[s] != 0 && keys[s] != h) s = (s + 1) & mask;
+        return s;
+    }
+
+    // Empty table for this many entries, kept under two-thirds full
+    private static void allocate(Page page, int entries) {
+        int capacity = 16;
+        while (capacity < (long) entries * 3 / 2 + 1) capacity *= 2;
+        page.keys = new long[capacity];
+        page.segment = new int[capacity];
+    }
+
+    // Adds the hash for a name in segment s; false if the hash is already there for another segment
+    private static boolean put(Page page, long h, int s) {
+        if ((page.entries + 1) * 3L > page.keys.length * 2L) {
+            long[] keys = page.keys;
+            int[] segment = page.segment;
+            allocate(page, page.entries * 2);
+            for (int k = 0; k < keys.length; k++) {
+                if (keys[k] == 0) continue;
+                int slot = slot(page.keys, keys[k]);
+                page.keys[slot] = keys[k];
+                page.segment[slot] = segment[k];
+            }
+        }
+        int slot = slot(page.keys, h);
+        if (page.keys[slot] == 0) {
+            page.keys[slot] = h;
+            page.segment[slot] = s;
+            page.entries++;
+            return true;
+        }
+        if (page.segment[slot] == s) return true;
+        page.segment[slot] = CONFLICT;
+        return false;
+    }
+
+    // Segment that may hold the name, or -1
+    private int segmentFor(String name) {
+        long h = hash64(name);
+        Page page = touchPage(pageOf(h));
+        int s = slot(page.keys, h);
+        if (page.keys[s] == 0) return -1;
+        if (page.segment[s] != CONFLICT) return page.segment[s];
+        return overflow.getOrDefault(name, -1);
+    }
+
+    // Resident form of page p; inflating it drops least recently used pages over the budget
+    private Page touchPage(int p) {
+        Page page = residentPages.get(p);
+        if (page != null) return page;
+        page = pages[p];
+        try {
+            ByteBuffer in = ByteBuffer.wrap(readCold(page));
+            allocate(page, page.entries);
+            for (int k = 0; k < page.entries; k++) {
+                long h = in.getLong();
+                int slot = slot(page.keys, h);
+                page.keys[slot] = h;
+                page.segment[slot] = in.getInt();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Faulting in index page " + p, e);
+        }
+        residentPages.put(p, page);
+        residentEntries += page.entries;
+        indexFaults++;
+        Iterator<Page> it = residentPages.values().iterator();
+        while (residentEntries > maxResidentEntries && residentPages.size() > 1) {
+            Page old = it.next();
+            it.remove();
+            old.keys = null;
+            old.segment = null;
+            residentEntries -= old.entries;
+        }
+        return page;
+    }
+
+    // Segment and local index of a node below the cut, packed as (s << 32) | v, or -1. The
+    // segment is resident afterwards, and the most recently used.
+    private long locate(String name) {
+        Long at = residentIndex.get(name);
+        if (at == null) {
+            int s = segmentFor(name);
+            if (s < 0) return -1;
+            touch(s);
+            at = residentIndex.get(name);
+            return at == null ? -1 : at;
+        }
+        touch((int) (at >>> 32));
+        return at;
+    }
+
+    // ===================== TIERS =====================
+
+    private Segment touch(int s) {
+        Segment seg = segments[s];
+        if (seg.names == null) faultIn(seg);
+        else if (seg.locks == 0) evictable.get(s); // refresh its LRU position
+        return seg;
+    }
+
+    private void faultIn(Segment seg) {
+        try {
+            byte[] block = readCold(seg);
+            int n = seg.size;
+            String[] names = new String[n];
+            int[] parent = new int[n];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(block))))) {
+                for (int i = 0; i < n; i++) {
+                    names[i] = in.readUTF();
+                    parent[i] = in.readInt();
+                }
+            }
+            int[] childStart = new int[n + 1];
+            for (int i = 1; i < n; i++) childStart[parent[i] + 1]++;
+            for (int i = 0; i < n; i++) childStart[i + 1] += childStart[i];
+            int[] childList = new int[Math.max(0, n - 1)];
+            int[] fill = Arrays.copyOf(childStart, n);
+            for (int i = 1; i < n; i++) childList[fill[parent[i]]++] = i;
+            for (int i = 0; i < n; i++) residentIndex.put(names[i], ((long) seg.id << 32) | i);
+
+            seg.parent = parent;
+            seg.childStart = childStart;
+            seg.childList = childList;
+            seg.lockedBy = new int[n];
+            Arrays.fill(seg.lockedBy, -1);
+            seg.lockedBelow = new int[n];
+            seg.names = names;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Faulting in segment " + seg.id, e);
+        }
+        evictable.put(seg.id, seg);
+        residentSegments++;
+        residentNodes += seg.size;
+        faults++;
+    }
+
+    // Drops least recently used lock-free segments until under budget, sparing `keep`
+    private void enforceBudget(Segment keep) {
+        if (residentNodes <= maxResidentNodes) return;
+        Iterator<Segment> it = evictable.values().iterator();
+        while (residentNodes > maxResidentNodes && it.hasNext()) {
+            Segment seg = it.next();
+            if (seg == keep) continue;
+            it.remove();
+            residentSegments--;
+            for (String name : seg.names) residentIndex.remove(name);
+            seg.names = null;
+            seg.parent = seg.childStart = seg.childList = seg.lockedBy = seg.lockedBelow = null;
+            residentNodes -= seg.size;
+            evictions++;
+        }
+    }
+
+    // ===================== OPERATIONS =====================
+
+    public boolean lock(String name, int uid) {
+        Integer t = topIndex.get(name);
+        if (t != null) {
+            if (topLockedBy[t] >= 0 || topLockedBelow[t] > 0 || topHasLocked(topParent[t])) return false;
+            topLockedBy[t] = uid;
+            topAdd(topParent[t], 1);
+            return true;
+        }
+        long at = locate(name);
+        Segment seg = at < 0 ? null : segments[(int) (at >>> 32)];
+        try {
+            if (seg == null) return false;
+            int v = (int) at;
+            if (seg.lockedBy[v] >= 0 || seg.lockedBelow[v] > 0 || segmentHasLocked(seg, seg.parent[v])) return false;
+            seg.lockedBy[v] = uid;
+            segmentAdd(seg, v, 1);
+            return true;
+        } finally {
+            enforceBudget(seg);
+        }
+    }
+
+    public boolean unlock(String name, int uid) {
+        Integer t = topIndex.get(name);
+        if (t != null) {
+            if (topLockedBy[t] < 0 || topLockedBy[t] != uid) return false;
+            topLockedBy[t] = -1;
+            topAdd(topParent[t], -1);
+            return true;
+        }
+        long at = locate(name);
+        Segment seg = at < 0 ? null : segments[(int) (at >>> 32)];
+        try {
+            if (seg == null) return false;
+            int v = (int) at;
+            if (seg.lockedBy[v] < 0 || seg.lockedBy[v] != uid) return false;
+            seg.lockedBy[v] = -1;
+            segmentAdd(seg, v, -1);
+            return true;
+        } finally {
+            enforceBudget(seg);
+        }
+    }
+
+    public boolean upgrade(String name, int uid) {
+        Integer t = topIndex.get(name);
+        if (t != null) {
+            // Releasing the last lock of a resident segment makes it evictable again
+            try {
+                if (topLockedBy[t] >= 0 || topLockedBelow[t] == 0 || topHasLocked(topParent[t])) return false;
+                int sp = 0, count = 0;
+                for (int c : topChildren[t]) sp = pushChild(sp, c);
+                while (sp > 0) {
+                    sp--;
+                    int s = stackSeg[sp], v = stackNode[sp];
+                    int owner = s == TOP ? topLockedBy[v] : segments[s].lockedBy[v];
+                    if (owner >= 0) {
+                        if (owner != uid) return false;
+                        count = found(count, s, v);
+                        continue;
+                    }
+                    if (s == TOP) {
+                        if (topLockedBelow[v] == 0) continue;
+                        for (int c : topChildren[v]) sp = pushChild(sp, c);
+                    } else {
+                        sp = pushSegmentChildren(sp, segments[s], v);
+                    }
+                }
+                release(count);
+                topLockedBy[t] = uid;
+                topAdd(topParent[t], 1);
+                return true;
+            } finally {
+                enforceBudget(null);
+            }
+        }
+        long at = locate(name);
+        Segment seg = at < 0 ? null : segments[(int) (at >>> 32)];
+        try {
+            if (seg == null) return false;
+            int v = (int) at;
+            if (seg.lockedBy[v] >= 0 || seg.lockedBelow[v] == 0 || segmentHasLocked(seg, seg.parent[v])) return false;
+            int sp = pushSegmentChildren(0, seg, v), count = 0;
+            while (sp > 0) {
+                sp--;
+                int u = stackNode[sp];
+                if (seg.lockedBy[u] >= 0) {
+                    if (seg.lockedBy[u] != uid) return false;
+                    count = found(count, seg.id, u);
+                    continue;
+                }
+                sp = pushSegmentChildren(sp, seg, u);
+            }
+            release(count);
+            seg.lockedBy[v] = uid;
+            segmentAdd(seg, v, 1);
+            return true;
+        } finally {
+            enforceBudget(seg);
+        }
+    }
+
+    // A top child is either a top node or the root of a segment; a segment with no locks
+    // (possibly cold) is skipped without being touched
+    private int pushChild(int sp, int c) {
+        if (c >= 0) return push(sp, TOP, c);
+        Segment seg = segments[-c - 1];
+        return seg.locks > 0 ? push(sp, seg.id, 0) : sp;
+    }
+
+    private int pushSegmentChildren(int sp, Segment seg, int v) {
+        if (seg.lockedBelow[v] == 0) return sp;
+        for (int k = seg.childStart[v]; k < seg.childStart[v + 1]; k++) sp = push(sp, seg.id, seg.childList[k]);
+        return sp;
+    }
+
+    private int push(int sp, int s, int v) {
+        if (sp == stackSeg.length) {
+            stackSeg = Arrays.copyOf(stackSeg, sp * 2);
+            stackNode = Arrays.copyOf(stackNode, sp * 2);
+        }
+        stackSeg[sp] = s;
+        stackNode[sp] = v;
+        return sp + 1;
+    }
+
+    private int found(int count, int s, int v) {
+        if (count == foundSeg.length) {
+            foundSeg = Arrays.copyOf(foundSeg, count * 2);
+            foundNode = Arrays.copyOf(foundNode, count * 2);
+        }
+        foundSeg[count] = s;
+        foundNode[count] = v;
+        return count + 1;
+    }
+
+    // Unlocks the nodes an upgrade collected
+    private void release(int count) {
+        for (int k = 0; k < count; k++) {
+            int s = foundSeg[k], v = foundNode[k];
+            if (s == TOP) {
+                topLockedBy[v] = -1;
+                topAdd(topParent[v], -1);
+            } else {
+                segments[s].lockedBy[v] = -1;
+                segmentAdd(segments[s], v, -1);
+            }
+        }
+    }
+
+    private boolean topHasLocked(int t) {
+        for (; t >= 0; t = topParent[t]) if (topLockedBy[t] >= 0) return true;
+        return false;
+    }
+
+    private void topAdd(int t, int delta) {
+        for (; t >= 0; t = topParent[t]) topLockedBelow[t] += delta;
+    }
+
+    // Locked ancestor from local node u upwards, through the top
+    private boolean segmentHasLocked(Segment seg, int u) {
+        for (; u >= 0; u = seg.parent[u]) if (seg.lockedBy[u] >= 0) return true;
+        return topHasLocked(seg.topParent);
+    }
+
+    // Counts a lock taken (+1) or released (-1) at local node v on every ancestor
+    private void segmentAdd(Segment seg, int v, int delta) {
+        seg.locks += delta;
+        if (seg.locks == 0) evictable.put(seg.id, seg);
+        else if (seg.locks == 1 && delta > 0) evictable.remove(seg.id);
+        for (int u = seg.parent[v]; u >= 0; u = seg.parent[u]) seg.lockedBelow[u] += delta;
+        topAdd(seg.topParent, delta);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spill != null) spill.close();
+    }
+
+    // ===================== STATS =====================
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    public int residentSegments() {
+        return residentSegments;
+    }
+
+    public long residentNodes() {
+        return residentNodes;
+    }
+
+    public long faults() {
+        return faults;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long indexFaults() {
+        return indexFaults;
+    }
+
+    // Bytes of the cold tier, segments and index pages, in memory or in the spill file
+    public long coldBytes() {
+        long bytes = 0;
+        for (Segment seg : segments) bytes += seg.length;
+        for (Page page : pages) bytes += page.length;
+        return bytes;
+    }
+
+    // ===================== DRIVER =====================
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // A large 4-ary tree where operations concentrate on a few subtrees, as in production
+    // hierarchies that are mostly never locked
+    public static void main(String args[] ) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        int cutDepth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        List<String> nodeNames = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) nodeNames.add("N" + i);
+
+        for (long budget : new long[]{n, n / 50}) {
+            long base = usedHeap();
+            Path file = Files.createTempFile("tiered", ".bin");
+            try (TieredTree tree = new TieredTree(nodeNames, 4, cutDepth, budget, file)) {
+                Files.delete(file);
+                long heap = usedHeap() - base;
+                System.out.printf("budget %d nodes: %d nodes, %d segments, cold tier %.1f MB on disk, %.1f MB heap after build%n",
+                    budget, n, tree.segmentCount(), tree.coldBytes() / 1e6, heap / 1e6);
+
+                // 90% of operations hit the last 1% of the nodes, the rest lock and unlock anywhere
+                Random random = new Random(1);
+                int ops = 1 << 20;
+                long t0 = System.nanoTime();
+                for (int k = 0; k < ops; k++) {
+                    if (random.nextInt(10) == 0) {
+                        // Short-lived lock anywhere in the tree
+                        String name = nodeNames.get(random.nextInt(n));
+                        if (tree.lock(name, 2)) tree.unlock(name, 2);
+                        continue;
+                    }
+                    String name = nodeNames.get(n - 1 - random.nextInt(n / 100));
+                    switch (random.nextInt(3)) {
+                        case 0 -> tree.lock(name, 1);
+                        case 1 -> tree.unlock(name, 1);
+                        default -> tree.upgrade(name, 1);
+                    }
+                }
+                long ns = System.nanoTime() - t0;
+                System.out.printf("%.0f ns/op, %d faults, %d evictions, %d index page faults, %d segments (%d nodes) resident, %.1f MB heap%n",
+                    ns / (double) ops, tree.faults(), tree.evictions(), tree.indexFaults(), tree.residentSegments(), tree.residentNodes(),
+                    (usedHeap() - base) / 1e6);
+            }
+        }
+    }
+}